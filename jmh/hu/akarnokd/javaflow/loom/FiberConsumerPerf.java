@@ -0,0 +1,60 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures items per second of iterating a {@link FiberPublisher} running on a worker of
+ * each {@link ExecutorPool} through {@link FiberConsumer}, with the one-by-one handover
+ * ({@code prefetch} 0) or the prefetching ring buffer.
+ * Run with {@code -prof gc} to get the allocations per item as {@code gc.alloc.rate.norm}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class FiberConsumerPerf {
+
+    @Param({ "0", "16", "128" })
+    public int prefetch;
+
+    @Param({ "single", "parallel", "forkjoin", "elastic", "virtual" })
+    public String pool;
+
+    static final int COUNT = 100_000;
+
+    ExecutorPool executorPool;
+
+    ExecutorWorker worker;
+
+    Flow.Publisher<Integer> publisher;
+
+    @Setup
+    public void setup() {
+        executorPool = PerfSources.pool(pool);
+        worker = executorPool.worker();
+        var source = PerfSources.source("fiber", COUNT, worker);
+        publisher = s -> worker.execute(() -> source.subscribe(s));
+    }
+
+    @TearDown
+    public void teardown() {
+        worker.close();
+        executorPool.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void iterate(Blackhole bh) throws Exception {
+        var consumer = new FiberConsumer<>(publisher);
+        try (var it = prefetch == 0 ? consumer.iterator() : consumer.iterator(prefetch)) {
+            while (it.hasNext()) {
+                bh.consume(it.next());
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.*;
+
+/**
+ * The {@link Flow.Publisher}s and {@link ExecutorPool}s compared by the benchmarks.
+ */
+final class PerfSources {
+
+    private PerfSources() {
+        throw new IllegalStateException("No instances!");
+    }
+
+    static Flow.Publisher<Integer> source(String type, int count, Executor executor) {
+        switch (type) {
+        case "continuation":
+            return new ContinuationPublisher<>(emitter -> {
+                for (int i = 0; i < count; i++) {
+                    emitter.accept(i);
+                }
+            });
+        case "fiber":
+            return new FiberPublisher<>(emitter -> {
+                for (int i = 0; i < count; i++) {
+                    emitter.emit(i);
+                }
+            });
+        case "submission":
+            return s -> {
+                var sp = new SubmissionPublisher<Integer>(executor, Flow.defaultBufferSize());
+                sp.subscribe(s);
+                for (int i = 0; i < count; i++) {
+                    sp.submit(i);
+                }
+                sp.close();
+            };
+        default:
+            throw new IllegalArgumentException("Unsupported source: " + type);
+        }
+    }
+
+    static ExecutorPool pool(String type) {
+        switch (type) {
+        case "single":
+            return new SingleExecutorPool();
+        case "parallel":
+            return new ParallelExecutorPool(Runtime.getRuntime().availableProcessors());
+        case "forkjoin":
+            return new ForkJoinExecutorPool();
+        case "elastic":
+            return new ElasticExecutorPool(Runtime.getRuntime().availableProcessors());
+        case "virtual":
+            return new VirtualThreadExecutorPool();
+        default:
+            throw new IllegalArgumentException("Unsupported pool: " + type);
+        }
+    }
+}
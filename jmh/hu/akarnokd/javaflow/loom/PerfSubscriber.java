@@ -0,0 +1,88 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.*;
+import java.util.concurrent.Flow.*;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Consumes items into a {@link Blackhole}, requesting them in batches of a fixed size,
+ * either from within {@code onNext} or by hopping over to an {@link Executor}.
+ */
+final class PerfSubscriber implements Subscriber<Object> {
+
+    final Blackhole bh;
+
+    final long batch;
+
+    final Executor requestExecutor;
+
+    final CountDownLatch latch;
+
+    Subscription upstream;
+
+    long consumed;
+
+    Throwable error;
+
+    /**
+     * Constructs a subscriber.
+     * @param bh the blackhole to consume the items with
+     * @param batch the request amount, {@link Long#MAX_VALUE} for unbounded
+     * @param requestExecutor where to issue the requests, null to request synchronously
+     */
+    PerfSubscriber(Blackhole bh, long batch, Executor requestExecutor) {
+        this.bh = bh;
+        this.batch = batch;
+        this.requestExecutor = requestExecutor;
+        this.latch = new CountDownLatch(1);
+    }
+
+    static long parseRequest(String request) {
+        return "unbounded".equals(request) ? Long.MAX_VALUE : Long.parseLong(request);
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        this.upstream = subscription;
+        request(batch);
+    }
+
+    @Override
+    public void onNext(Object item) {
+        bh.consume(item);
+        if (batch != Long.MAX_VALUE && ++consumed == batch) {
+            consumed = 0;
+            request(batch);
+        }
+    }
+
+    void request(long n) {
+        var exec = requestExecutor;
+        if (exec == null) {
+            upstream.request(n);
+        } else {
+            exec.execute(() -> upstream.request(n));
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        latch.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+        latch.countDown();
+    }
+
+    void await() throws Throwable {
+        if (latch.getCount() != 0) {
+            latch.await();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
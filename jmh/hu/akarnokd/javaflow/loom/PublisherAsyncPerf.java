@@ -0,0 +1,61 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures items per second of each publisher with a subscriber that issues its requests
+ * from a worker of each {@link ExecutorPool}, making the generator suspend and resume across threads.
+ * Run with {@code -prof gc} to get the allocations per item as {@code gc.alloc.rate.norm}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class PublisherAsyncPerf {
+
+    @Param({ "continuation", "fiber", "submission" })
+    public String source;
+
+    @Param({ "1", "16", "128", "unbounded" })
+    public String request;
+
+    @Param({ "single", "parallel", "forkjoin", "elastic", "virtual" })
+    public String pool;
+
+    static final int COUNT = 100_000;
+
+    ExecutorPool executorPool;
+
+    ExecutorWorker worker;
+
+    Flow.Publisher<Integer> publisher;
+
+    long batch;
+
+    @Setup
+    public void setup() {
+        executorPool = PerfSources.pool(pool);
+        worker = executorPool.worker();
+        publisher = PerfSources.source(source, COUNT, worker);
+        batch = PerfSubscriber.parseRequest(request);
+    }
+
+    @TearDown
+    public void teardown() {
+        worker.close();
+        executorPool.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void async(Blackhole bh) throws Throwable {
+        var s = new PerfSubscriber(bh, batch, worker);
+        publisher.subscribe(s);
+        s.await();
+    }
+}
@@ -0,0 +1,45 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures items per second of each publisher with a subscriber requesting synchronously from {@code onNext}.
+ * Run with {@code -prof gc} to get the allocations per item as {@code gc.alloc.rate.norm}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1)
+@State(Scope.Thread)
+public class PublisherPerf {
+
+    @Param({ "continuation", "fiber", "submission" })
+    public String source;
+
+    @Param({ "1", "16", "128", "unbounded" })
+    public String request;
+
+    static final int COUNT = 1_000_000;
+
+    Flow.Publisher<Integer> publisher;
+
+    long batch;
+
+    @Setup
+    public void setup() {
+        publisher = PerfSources.source(source, COUNT, Runnable::run);
+        batch = PerfSubscriber.parseRequest(request);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void sync(Blackhole bh) throws Throwable {
+        var s = new PerfSubscriber(bh, batch, null);
+        publisher.subscribe(s);
+        s.await();
+    }
+}
@@ -1,8 +1,23 @@
 package hu.akarnokd.javaflow.loom;
 
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Takes items from any of a set of {@link BlockingQueue}s.
+ * <p>
+ * When constructed with an {@link ExecutorService}, one forwarder task per queue moves the items
+ * into an internal output queue. When constructed without it, the selector polls the queues directly
+ * in a round-robin fashion and parks when all of them are empty; in this mode, producers have to
+ * offer into the queues returned by {@link #source(int)} which signal the selector. Optional per-queue
+ * weights let a queue be served that many times in a row before moving on to the next queue.
+ * The direct mode supports one consumer at a time. Closing the selector in the direct mode wakes up
+ * the waiting consumer: {@link #take()} throws an {@link IllegalStateException} and
+ * {@link #poll(long, TimeUnit)} returns null once the queues are empty.
+ * @param <T> the element type
+ */
 public final class BlockingQueueSelector<T> implements AutoCloseable {
 
     final BlockingQueue<T>[] queues;
@@ -15,15 +30,152 @@ public final class BlockingQueueSelector<T> implements AutoCloseable {
 
     final Future<?>[] futures;
 
+    final BlockingQueue<T>[] sources;
+
+    final int[] weights;
+
+    final int totalWeight;
+
+    /** The consumer parked in the direct mode, null if not waiting. */
+    volatile Thread waiter;
+
+    /** Set by {@link #close()} in the direct mode. */
+    volatile boolean closed;
+
+    int index;
+
+    int served;
+
     public BlockingQueueSelector(BlockingQueue<T>[] queues, ExecutorService executor, int capacity) {
         this.queues = queues;
         this.executor = executor;
         this.outputQueue = capacity != Integer.MAX_VALUE ? new ArrayBlockingQueue<>(capacity) : new LinkedBlockingQueue<>();
         this.once = new AtomicBoolean();
         this.futures = new Future[queues.length];
+        this.sources = queues;
+        this.weights = null;
+        this.totalWeight = 0;
+    }
+
+    public BlockingQueueSelector(BlockingQueue<T>[] queues) {
+        this(queues, null);
+    }
+
+    /**
+     * Constructs a direct selector where each queue is polled at most
+     * the given weight times in a row while it has items.
+     * @param queues the queues to select from
+     * @param weights the positive weight of each queue, null means all 1
+     */
+    @SuppressWarnings("unchecked")
+    public BlockingQueueSelector(BlockingQueue<T>[] queues, int[] weights) {
+        if (weights == null) {
+            weights = new int[queues.length];
+            Arrays.fill(weights, 1);
+        } else if (weights.length != queues.length) {
+            throw new IllegalArgumentException("weights.length != queues.length: " + weights.length + " != " + queues.length);
+        }
+        var total = 0;
+        for (var w : weights) {
+            if (w <= 0) {
+                throw new IllegalArgumentException("weight > 0 required but it was " + w);
+            }
+            total += w;
+        }
+        this.weights = weights.clone();
+        this.totalWeight = total;
+        this.queues = queues;
+        this.executor = null;
+        this.outputQueue = null;
+        this.once = null;
+        this.futures = null;
+        this.sources = new BlockingQueue[queues.length];
+        for (int i = 0; i < queues.length; i++) {
+            sources[i] = new SignallingQueue<>(queues[i], this);
+        }
+    }
+
+    /**
+     * Returns the queue producers should offer into for the given source index.
+     * @param index the source index
+     * @return the queue to offer into
+     */
+    public BlockingQueue<T> source(int index) {
+        return sources[index];
     }
 
     public T take() throws InterruptedException {
+        if (executor == null) {
+            return takeDirect();
+        }
+        start();
+        var event = new FlowEvents.SelectorWait();
+        event.begin();
+        try {
+            return outputQueue.take();
+        } finally {
+            waited(event, false, false);
+        }
+    }
+
+    /**
+     * Waits for at least one item, then moves it and the further available items,
+     * up to the given maximum, into the sink.
+     * @param maxElements the maximum number of items to move, positive
+     * @param sink the collection to add the items to
+     * @return the number of items moved
+     * @throws InterruptedException if the consumer was interrupted while waiting
+     */
+    public int take(int maxElements, Collection<? super T> sink) throws InterruptedException {
+        if (maxElements <= 0) {
+            throw new IllegalArgumentException("maxElements > 0 required but it was " + maxElements);
+        }
+        sink.add(take());
+        return 1 + drainTo(sink, maxElements - 1);
+    }
+
+    /**
+     * Waits at most the given amount of time for an item.
+     * @param timeout the time to wait
+     * @param unit the time unit of the timeout
+     * @return the item or null if the timeout elapsed
+     * @throws InterruptedException if the consumer was interrupted while waiting
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (executor == null) {
+            return awaitDirect(true, unit.toNanos(timeout));
+        }
+        start();
+        var event = new FlowEvents.SelectorWait();
+        event.begin();
+        T v = null;
+        try {
+            v = outputQueue.poll(timeout, unit);
+        } finally {
+            waited(event, true, v == null);
+        }
+        return v;
+    }
+
+    /**
+     * Moves the currently available items, up to the given maximum, into the collection without waiting.
+     * @param collection the collection to add the items to
+     * @param maxElements the maximum number of items to move
+     * @return the number of items moved
+     */
+    public int drainTo(Collection<? super T> collection, int maxElements) {
+        if (executor == null) {
+            return drainDirect(collection, maxElements);
+        }
+        start();
+        return outputQueue.drainTo(collection, maxElements);
+    }
+
+    public int drainTo(Collection<? super T> collection) {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    void start() {
         if (!once.get() && once.compareAndSet(false, true)) {
             int i = 0;
             for (BlockingQueue<T> queue : queues) {
@@ -36,15 +188,233 @@ public final class BlockingQueueSelector<T> implements AutoCloseable {
                 i++;
             }
         }
-        return outputQueue.take();
+    }
+
+    T takeDirect() throws InterruptedException {
+        var v = awaitDirect(false, 0L);
+        if (v == null) {
+            throw new IllegalStateException("The selector has been closed");
+        }
+        return v;
+    }
+
+    T awaitDirect(boolean timed, long nanos) throws InterruptedException {
+        var v = pollDirect();
+        if (v != null) {
+            return v;
+        }
+        var event = new FlowEvents.SelectorWait();
+        event.begin();
+        try {
+            v = awaitDirectSlow(timed, nanos);
+        } finally {
+            waited(event, timed, v == null);
+        }
+        return v;
+    }
+
+    T awaitDirectSlow(boolean timed, long nanos) throws InterruptedException {
+        var deadline = timed ? System.nanoTime() + nanos : 0L;
+        for (;;) {
+            var v = pollDirect();
+            if (v != null) {
+                return v;
+            }
+            if (closed) {
+                return null;
+            }
+            if (timed) {
+                nanos = deadline - System.nanoTime();
+                if (nanos <= 0L) {
+                    return null;
+                }
+            }
+
+            // register first, then re-check so a concurrent offer either sees the waiter
+            // or its item is found here
+            waiter = Thread.currentThread();
+            try {
+                v = pollDirect();
+                if (v != null || closed) {
+                    return v;
+                }
+                if (timed) {
+                    LockSupport.parkNanos(this, nanos);
+                } else {
+                    LockSupport.park(this);
+                }
+            } finally {
+                waiter = null;
+            }
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    T pollDirect() {
+        var qs = queues;
+        var n = qs.length;
+        var i = index;
+        for (int j = 0; j < n; j++) {
+            var v = qs[i].poll();
+            if (v != null) {
+                if (++served >= weights[i]) {
+                    served = 0;
+                    if (++i == n) {
+                        i = 0;
+                    }
+                }
+                index = i;
+                return v;
+            }
+            served = 0;
+            if (++i == n) {
+                i = 0;
+            }
+        }
+        return null;
+    }
+
+    int drainDirect(Collection<? super T> collection, int maxElements) {
+        var qs = queues;
+        var n = qs.length;
+        var i = index;
+        // drain in weighted rounds so that a busy queue can't take the whole batch
+        var quota = Math.max(1, maxElements / totalWeight);
+        var remaining = maxElements;
+        var empty = 0;
+        served = 0;
+        while (remaining > 0 && empty < n) {
+            var c = qs[i].drainTo(collection, Math.min(quota * weights[i], remaining));
+            if (++i == n) {
+                i = 0;
+            }
+            if (c == 0) {
+                empty++;
+            } else {
+                empty = 0;
+                remaining -= c;
+            }
+        }
+        index = i;
+        return maxElements - remaining;
+    }
+
+    void waited(FlowEvents.SelectorWait event, boolean timed, boolean timedOut) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.queues = queues.length;
+            event.timed = timed;
+            event.timedOut = timed && timedOut;
+            event.commit();
+        }
+    }
+
+    void signal() {
+        var w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
     }
 
     @Override
     public void close() throws Exception {
-        for (Future<?> future : futures) {
-            if (future != null) {
-                future.cancel(true);
+        if (futures != null) {
+            for (Future<?> future : futures) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        } else {
+            closed = true;
+            signal();
+        }
+    }
+
+    /**
+     * Delegates to a backing queue and signals the selector when an item has been added.
+     * @param <T> the element type
+     */
+    static final class SignallingQueue<T> extends AbstractQueue<T> implements BlockingQueue<T> {
+
+        final BlockingQueue<T> queue;
+
+        final BlockingQueueSelector<T> parent;
+
+        SignallingQueue(BlockingQueue<T> queue, BlockingQueueSelector<T> parent) {
+            this.queue = queue;
+            this.parent = parent;
+        }
+
+        @Override
+        public boolean offer(T e) {
+            if (queue.offer(e)) {
+                parent.signal();
+                return true;
             }
+            return false;
+        }
+
+        @Override
+        public boolean offer(T e, long timeout, TimeUnit unit) throws InterruptedException {
+            if (queue.offer(e, timeout, unit)) {
+                parent.signal();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void put(T e) throws InterruptedException {
+            queue.put(e);
+            parent.signal();
+        }
+
+        @Override
+        public T poll() {
+            return queue.poll();
+        }
+
+        @Override
+        public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+            return queue.poll(timeout, unit);
+        }
+
+        @Override
+        public T take() throws InterruptedException {
+            return queue.take();
+        }
+
+        @Override
+        public T peek() {
+            return queue.peek();
+        }
+
+        @Override
+        public int size() {
+            return queue.size();
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return queue.remainingCapacity();
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return queue.iterator();
+        }
+
+        @Override
+        public int drainTo(Collection<? super T> c) {
+            return queue.drainTo(c);
+        }
+
+        @Override
+        public int drainTo(Collection<? super T> c, int maxElements) {
+            return queue.drainTo(c, maxElements);
         }
     }
 }
@@ -0,0 +1,55 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps up to {@code maxPooled} direct {@link ByteBuffer}s of the same size for reuse,
+ * so the I/O publishers don't allocate (and later free) a direct buffer per subscription.
+ */
+final class ByteBufferPool {
+
+    final int bufferSize;
+
+    final int maxPooled;
+
+    final ConcurrentLinkedQueue<ByteBuffer> buffers;
+
+    final AtomicInteger pooled;
+
+    ByteBufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize > 0 required but it was " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.buffers = new ConcurrentLinkedQueue<>();
+        this.pooled = new AtomicInteger();
+    }
+
+    /**
+     * Takes a pooled buffer or allocates a new one.
+     * @return the cleared buffer
+     */
+    ByteBuffer acquire() {
+        var b = buffers.poll();
+        if (b == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.getAndDecrement();
+        return b.clear();
+    }
+
+    /**
+     * Returns the buffer to the pool, or drops it if the pool is full.
+     * @param buffer the buffer taken via {@link #acquire()}, no longer used by the caller
+     */
+    void release(ByteBuffer buffer) {
+        if (pooled.incrementAndGet() <= maxPooled) {
+            buffers.offer(buffer);
+        } else {
+            pooled.getAndDecrement();
+        }
+    }
+}
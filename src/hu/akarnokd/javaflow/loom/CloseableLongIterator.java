@@ -0,0 +1,10 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.PrimitiveIterator;
+
+/**
+ * A {@link CloseableIterator} whose items can be consumed without boxing via {@link #nextLong()}.
+ */
+public interface CloseableLongIterator extends CloseableIterator<Long>, PrimitiveIterator.OfLong {
+
+}
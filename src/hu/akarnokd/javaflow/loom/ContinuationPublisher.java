@@ -1,11 +1,11 @@
 package hu.akarnokd.javaflow.loom;
 
-import java.util.concurrent.*;
+import java.lang.invoke.*;
+import java.util.*;
 import java.util.concurrent.Flow.*;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
-public final class ContinuationPublisher<T> implements Flow.Publisher<T> {
+public final class ContinuationPublisher<T> implements FusablePublisher<T> {
 
     final Consumer<Consumer<? super T>> continuableGenerator;
 
@@ -16,91 +16,143 @@ public final class ContinuationPublisher<T> implements Flow.Publisher<T> {
     @Override
     public void subscribe(Subscriber<? super T> subscriber) {
         var cs = new ContinuationSubscription<>(subscriber, continuableGenerator);
-        cs.continuation = new Continuation(cs.scope, cs);
+        cs.continuation = new Continuation(cs, cs);
         subscriber.onSubscribe(cs);
     }
 
-    static final class ContinuationSubscription<T> extends AtomicLong implements Subscription, Consumer<T>, Runnable {
+    @Override
+    public CloseableIterator<T> fusedIterator() {
+        var ci = new ContinuationIterator<T>(continuableGenerator);
+        ci.continuation = new Continuation(ci, ci);
+        return ci;
+    }
 
-        private static final long serialVersionUID = 6232067150858919051L;
+    /**
+     * The subscription is its own {@link ContinuationScope}, which saves an allocation per subscriber
+     * while keeping the scopes of nested generators distinct.
+     * <p>
+     * The continuation is idle/suspended while {@code wip} is zero and is running while it is positive:
+     * the requester incrementing it from zero is the only one calling {@link Continuation#run()}, others
+     * only increment it so the running requester resumes the continuation once more after it yielded.
+     * @param <T> the element type
+     */
+    static final class ContinuationSubscription<T> extends ContinuationScope implements Subscription, Consumer<T>, Runnable {
 
-        final Subscriber<? super T> downstream;
+        static final VarHandle REQUESTED;
+
+        static final VarHandle WIP;
+
+        static {
+            try {
+                var lookup = MethodHandles.lookup();
+                REQUESTED = lookup.findVarHandle(ContinuationSubscription.class, "requested", long.class);
+                WIP = lookup.findVarHandle(ContinuationSubscription.class, "wip", int.class);
+            } catch (ReflectiveOperationException ex) {
+                throw new InternalError(ex);
+            }
+        }
 
-        final ContinuationScope scope = new ContinuationScope("ContinuationSubscription");
+        final Subscriber<? super T> downstream;
 
         final Consumer<Consumer<? super T>> continuableGenerator;
 
+        final FlowMetrics metrics;
+
         static final RuntimeException STOP = new RuntimeException("Cancellation from downstream");
 
         Continuation continuation;
 
         volatile RuntimeException stop;
 
+        volatile long requested;
+
+        volatile int wip;
+
+        /** Set once the continuation ran the generator, accessed only by the current resumer. */
+        boolean started;
+
         ContinuationSubscription(Subscriber<? super T> downstream, Consumer<Consumer<? super T>> continuableGenerator) {
+            super("ContinuationSubscription");
             this.downstream = downstream;
             this.continuableGenerator = continuableGenerator;
+            this.metrics = FlowMetrics.current();
         }
 
         @Override
         public void accept(T t) {
-            if (get() == 0L && stop == null) {
-                Continuation.yield(scope);
+            // the resumer may run the continuation once more than needed
+            if (requested == 0L && stop == null) {
+                suspend();
             }
             var stop = this.stop;
             if (stop == null) {
                 downstream.onNext(t);
 
-                addAndGet(-1);
+                REQUESTED.getAndAdd(this, -1L);
+                metrics.emitted(ContinuationPublisher.class, null, 1L);
             } else {
                 throw stop;
             }
         }
 
+        void suspend() {
+            var m = metrics;
+            m.suspended(ContinuationPublisher.class, null);
+            var start = m.isEnabled() ? System.nanoTime() : 0L;
+            var event = new FlowEvents.GeneratorSuspend();
+            event.begin();
+            while (requested == 0L && stop == null) {
+                Continuation.yield(this);
+            }
+            if (m.isEnabled()) {
+                m.parked(ContinuationPublisher.class, null, System.nanoTime() - start);
+            }
+            FlowEvents.suspended(event, ContinuationPublisher.class);
+        }
+
         @Override
         public void request(long n) {
             if (n <= 0) {
-                stop = new IllegalArgumentException("3.9 violated: positive request amount required but it was " + n);
+                stop = Requests.badRequest(n);
                 n = 1; // this will resume a suspended continuation
             }
-            for (;;) {
-                var current = get();
-                if (current == Long.MAX_VALUE) {
-                    return;
-                }
-
-                var next = current + n;
-                if (next < 0L) {
-                    next = Long.MAX_VALUE;
-                }
-
-                if (compareAndSet(current, next)) {
-                    if (current == 0L) {
-                        resume();
-                    }
-                    return;
-                }
+            if (Requests.addCap(REQUESTED, this, n) == 0L) {
+                resume();
             }
         }
 
         void resume() {
-            while (!continuation.isDone()) {
-                try {
-                    continuation.run();
-                    return;
-                } catch (IllegalStateException ignored) {
-                    // could mean the continuation has ended and there is nothing to resume
+            if ((int)WIP.getAndAdd(this, 1) != 0) {
+                return;
+            }
+            var c = continuation;
+            var missed = 1;
+            for (;;) {
+                if (!c.isDone()) {
+                    if (started) {
+                        metrics.resumed(ContinuationPublisher.class, null);
+                        FlowEvents.resumed(ContinuationPublisher.class);
+                    }
+                    c.run();
+                }
+
+                missed = (int)WIP.getAndAdd(this, -missed) - missed;
+                if (missed == 0) {
+                    break;
                 }
             }
         }
 
         @Override
         public void cancel() {
+            metrics.cancelled(ContinuationPublisher.class, null);
             stop = STOP;
             request(1); // this should unsuspend accept if yielding
         }
 
         @Override
         public void run() {
+            started = true;
             try {
                 continuableGenerator.accept(this);
             } catch (RuntimeException ex) {
@@ -114,4 +166,103 @@ public final class ContinuationPublisher<T> implements Flow.Publisher<T> {
             }
         }
     }
+
+    /**
+     * Runs the generator in a continuation on the thread calling {@link #hasNext()}: each
+     * {@link #accept(Object)} stores the item and yields back to the consumer, so there is no
+     * request accounting, queue or lock between the two.
+     * @param <T> the element type
+     */
+    static final class ContinuationIterator<T> extends ContinuationScope implements CloseableIterator<T>, Consumer<T>, Runnable {
+
+        final Consumer<Consumer<? super T>> continuableGenerator;
+
+        final FlowMetrics metrics;
+
+        Continuation continuation;
+
+        T value;
+
+        boolean started;
+
+        boolean done;
+
+        boolean cancelled;
+
+        RuntimeException error;
+
+        ContinuationIterator(Consumer<Consumer<? super T>> continuableGenerator) {
+            super("ContinuationIterator");
+            this.continuableGenerator = continuableGenerator;
+            this.metrics = FlowMetrics.current();
+        }
+
+        @Override
+        public void accept(T t) {
+            if (cancelled) {
+                throw ContinuationSubscription.STOP;
+            }
+            value = Objects.requireNonNull(t, "t is null");
+            metrics.emitted(ContinuationPublisher.class, null, 1L);
+            Continuation.yield(this);
+            if (cancelled) {
+                throw ContinuationSubscription.STOP;
+            }
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            try {
+                continuableGenerator.accept(this);
+            } catch (RuntimeException ex) {
+                if (ex != ContinuationSubscription.STOP) {
+                    error = ex;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (value != null) {
+                return true;
+            }
+            if (!done) {
+                continuation.run();
+                if (value != null) {
+                    return true;
+                }
+                done = true;
+            }
+            var ex = error;
+            if (ex != null) {
+                throw new RuntimeException(ex);
+            }
+            return false;
+        }
+
+        @Override
+        public T next() {
+            if (value != null || hasNext()) {
+                var v = value;
+                value = null;
+                return v;
+            }
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public void close() {
+            value = null;
+            if (!done) {
+                done = true;
+                cancelled = true;
+                metrics.cancelled(ContinuationPublisher.class, null);
+                // let the suspended accept() unwind the generator
+                if (started && !continuation.isDone()) {
+                    continuation.run();
+                }
+            }
+        }
+    }
 }
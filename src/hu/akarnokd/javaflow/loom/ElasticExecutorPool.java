@@ -0,0 +1,163 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.ArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An {@link ExecutorPool} that creates single-threaded executors on demand, up to a maximum,
+ * counts the workers handed out for each of them and shuts down executors that had no
+ * workers for longer than a time-to-live.
+ */
+public final class ElasticExecutorPool implements ExecutorPool {
+
+    final int maxExecutors;
+
+    final long ttlNanos;
+
+    final ArrayList<CarrierExecutor> executors;
+
+    final ScheduledExecutorService evictor;
+
+    boolean closed;
+
+    public ElasticExecutorPool(int maxExecutors) {
+        this(maxExecutors, 60, TimeUnit.SECONDS);
+    }
+
+    public ElasticExecutorPool(int maxExecutors, long ttl, TimeUnit unit) {
+        if (maxExecutors <= 0) {
+            throw new IllegalArgumentException("maxExecutors > 0 required but it was " + maxExecutors);
+        }
+        if (ttl <= 0L) {
+            throw new IllegalArgumentException("ttl > 0 required but it was " + ttl);
+        }
+        this.maxExecutors = maxExecutors;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.executors = new ArrayList<>();
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            var t = new Thread(r, "ElasticExecutorPool-Evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        evictor.scheduleWithFixedDelay(this::evict, ttl, ttl, unit);
+    }
+
+    @Override
+    public ExecutorWorker worker() {
+        var event = new FlowEvents.WorkerAcquire();
+        event.begin();
+        CarrierExecutor carrier = null;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("ExecutorPool closed");
+            }
+            for (var c : executors) {
+                if (carrier == null || c.refs < carrier.refs) {
+                    carrier = c;
+                }
+            }
+            // reuse an idle executor, otherwise grow unless at the limit
+            if ((carrier == null || carrier.refs != 0) && executors.size() < maxExecutors) {
+                carrier = new CarrierExecutor(Executors.newSingleThreadExecutor());
+                executors.add(carrier);
+            }
+            carrier.refs++;
+        }
+        FlowEvents.acquired(event, ElasticExecutorPool.class);
+        return new ElasticExecutorWorker(this, carrier);
+    }
+
+    synchronized void release(CarrierExecutor carrier) {
+        if (--carrier.refs == 0) {
+            carrier.idleSince = System.nanoTime();
+        }
+    }
+
+    void evict() {
+        var now = System.nanoTime();
+        synchronized (this) {
+            var it = executors.iterator();
+            while (it.hasNext()) {
+                var c = it.next();
+                if (c.refs == 0 && now - c.idleSince >= ttlNanos) {
+                    it.remove();
+                    c.service.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of executors currently alive.
+     * @return the number of executors currently alive
+     */
+    public synchronized int size() {
+        return executors.size();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (var c : executors) {
+                c.service.shutdown();
+            }
+            executors.clear();
+        }
+        evictor.shutdownNow();
+    }
+
+    static final class CarrierExecutor {
+
+        final ExecutorService service;
+
+        final ThreadFactory fibers;
+
+        /** Guarded by the parent pool. */
+        int refs;
+
+        /** Guarded by the parent pool. */
+        long idleSince;
+
+        CarrierExecutor(ExecutorService service) {
+            this.service = service;
+            this.fibers = Thread.builder().virtual(service).factory();
+        }
+    }
+
+    static final class ElasticExecutorWorker extends AtomicBoolean implements ExecutorWorker {
+
+        private static final long serialVersionUID = -1390473563185271352L;
+
+        final ElasticExecutorPool parent;
+
+        final CarrierExecutor carrier;
+
+        ElasticExecutorWorker(ElasticExecutorPool parent, CarrierExecutor carrier) {
+            this.parent = parent;
+            this.carrier = carrier;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            carrier.service.execute(command);
+        }
+
+        @Override
+        public void startFiber(Runnable task) {
+            carrier.fibers.newThread(task).start();
+        }
+
+        @Override
+        public void close() {
+            if (compareAndSet(false, true)) {
+                parent.release(carrier);
+                FlowEvents.released(ElasticExecutorPool.class);
+            }
+        }
+    }
+}
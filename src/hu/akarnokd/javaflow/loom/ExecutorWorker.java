@@ -6,4 +6,14 @@ public interface ExecutorWorker extends Executor, AutoCloseable {
 
     @Override
     void close();
+
+    /**
+     * Starts a fiber running the given task with this worker as its carrier.
+     * <p>
+     * The workers of the built-in pools reuse one fiber factory per carrier executor.
+     * @param task the task to run
+     */
+    default void startFiber(Runnable task) {
+        Thread.builder().virtual(this).factory().newThread(task).start();
+    }
 }
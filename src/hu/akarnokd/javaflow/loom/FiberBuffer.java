@@ -0,0 +1,299 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Flow.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Collects the upstream items into {@link List}s of at most {@code maxSize} items, emitting a list
+ * when it fills up or when {@code timeout} elapsed since its first item arrived, whichever happens first.
+ * <p>
+ * The timeout is tracked by the {@link TimingWheel} of the given {@link ExecutorPool}, whose fiber runs on
+ * one of its workers, instead of a dedicated timer thread. The upstream is requested {@code 2 * maxSize}
+ * items upfront, but at most {@code 65536}, and replenished in batches. When {@code reuse} is set, the same list is emitted over and
+ * over and cleared once {@code onNext} returns, thus the downstream has to consume it before returning
+ * from {@code onNext}.
+ * @param <T> the element type
+ */
+public final class FiberBuffer<T> implements Flow.Publisher<List<T>> {
+
+    static final int MAX_PREFETCH = 1 << 16;
+
+    static final int INITIAL_CAPACITY = 16;
+
+    final Flow.Publisher<T> source;
+
+    final ExecutorPool pool;
+
+    final int maxSize;
+
+    final long timeoutNanos;
+
+    final boolean reuse;
+
+    public FiberBuffer(Flow.Publisher<T> source, ExecutorPool pool, int maxSize, long timeout, TimeUnit unit) {
+        this(source, pool, maxSize, timeout, unit, false);
+    }
+
+    public FiberBuffer(Flow.Publisher<T> source, ExecutorPool pool, int maxSize, long timeout, TimeUnit unit, boolean reuse) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize > 0 required but it was " + maxSize);
+        }
+        if (timeout <= 0L) {
+            throw new IllegalArgumentException("timeout > 0 required but it was " + timeout);
+        }
+        this.source = source;
+        this.pool = pool;
+        this.maxSize = maxSize;
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.reuse = reuse;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super List<T>> subscriber) {
+        source.subscribe(new FiberBufferSubscriber<>(subscriber, pool, maxSize, timeoutNanos, reuse));
+    }
+
+    /**
+     * The items, the timeouts and the downstream requests are all serialized through the drain loop.
+     * <p>
+     * When the drain loop adds the first item to the current list, it opens a new generation with a deadline
+     * and schedules the timer. When the timer expires and the deadline of the current generation has passed,
+     * it marks the generation expired so the drain loop emits the partial list.
+     * @param <T> the element type
+     */
+    static final class FiberBufferSubscriber<T> extends AtomicInteger implements Subscriber<T>, Subscription, Runnable {
+
+        private static final long serialVersionUID = 6263016834557126180L;
+
+        final Subscriber<? super List<T>> downstream;
+
+        final ExecutorPool pool;
+
+        final ExecutorWorker worker;
+
+        final FlowMetrics metrics;
+
+        final int maxSize;
+
+        final int prefetch;
+
+        final int limit;
+
+        final long timeoutNanos;
+
+        final boolean reuse;
+
+        final TimingWheel.Timer timer;
+
+        final SpscArrayQueue<T> items;
+
+        final AtomicLong requested;
+
+        Subscription upstream;
+
+        volatile boolean upstreamDone;
+        Throwable upstreamError;
+
+        volatile boolean cancelled;
+
+        volatile Throwable badRequest;
+
+        /** Accessed only from the drain loop. */
+        List<T> buffer;
+
+        long emitted;
+
+        int consumed;
+
+        /** The generation of the current non-empty list, written only by the drain loop. */
+        volatile long generation;
+
+        /** When the current generation times out, written by the drain loop before {@link #generation}. */
+        volatile long deadline;
+
+        /** The last generation the timer found expired. */
+        volatile long expired;
+
+        FiberBufferSubscriber(Subscriber<? super List<T>> downstream, ExecutorPool pool,
+                int maxSize, long timeoutNanos, boolean reuse) {
+            this.downstream = downstream;
+            this.pool = pool;
+            this.worker = pool.worker();
+            this.metrics = FlowMetrics.current();
+            this.maxSize = maxSize;
+            // the ring buffer is allocated upfront, so a huge maxSize, i.e., time-only batching, can't size it
+            this.prefetch = maxSize > (MAX_PREFETCH >> 1) ? MAX_PREFETCH : maxSize << 1;
+            this.limit = prefetch - (prefetch >> 2);
+            this.timeoutNanos = timeoutNanos;
+            this.reuse = reuse;
+            this.timer = TimingWheel.timer(pool, this, worker);
+            this.items = new SpscArrayQueue<>(prefetch);
+            this.requested = new AtomicLong();
+            this.buffer = new ArrayList<>(Math.min(maxSize, INITIAL_CAPACITY));
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.upstream = subscription;
+            downstream.onSubscribe(this);
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(T item) {
+            if (!items.offer(item)) {
+                upstream.cancel();
+                onError(new IllegalStateException("Queue full?! More items arrived than requested"));
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            upstreamError = throwable;
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                // signalled from the drain loop, serialized with the other signals
+                badRequest = Requests.badRequest(n);
+                drain();
+                return;
+            }
+            Requests.addCap(requested, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            metrics.cancelled(FiberBuffer.class, pool);
+            cancelled = true;
+            upstream.cancel();
+            drain();
+        }
+
+        /**
+         * The timer expired.
+         */
+        @Override
+        public void run() {
+            // a newer generation's deadline is only later, in which case the timer got rescheduled for it
+            var g = generation;
+            if (System.nanoTime() - deadline >= 0L) {
+                expired = g;
+                drain();
+            }
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            var missed = 1;
+            var e = emitted;
+            var b = buffer;
+
+            for (;;) {
+                var r = requested.get();
+
+                for (;;) {
+                    if (cancelled) {
+                        cleanup();
+                        return;
+                    }
+
+                    var br = badRequest;
+                    if (br != null) {
+                        upstream.cancel();
+                        cleanup();
+                        downstream.onError(br);
+                        return;
+                    }
+
+                    var d = upstreamDone;
+                    if (d && upstreamError != null) {
+                        cleanup();
+                        downstream.onError(upstreamError);
+                        return;
+                    }
+
+                    var full = b.size() == maxSize;
+                    if (!full) {
+                        var v = items.poll();
+                        if (v != null) {
+                            if (b.isEmpty()) {
+                                deadline = System.nanoTime() + timeoutNanos;
+                                generation++;
+                                timer.schedule(timeoutNanos);
+                            }
+                            b.add(v);
+                            if (++consumed == limit) {
+                                consumed = 0;
+                                upstream.request(limit);
+                            }
+                            continue;
+                        }
+                    }
+
+                    var last = d && items.isEmpty();
+                    if (full || (!b.isEmpty() && (last || expired == generation))) {
+                        if (e == r) {
+                            break;
+                        }
+                        b = emit(b);
+                        e++;
+                        continue;
+                    }
+
+                    if (last) {
+                        cleanup();
+                        downstream.onComplete();
+                        return;
+                    }
+                    break;
+                }
+
+                emitted = e;
+                buffer = b;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        List<T> emit(List<T> b) {
+            // closes the generation so a pending timeout won't apply to the next list
+            expired = generation;
+            downstream.onNext(b);
+            metrics.emitted(FiberBuffer.class, pool, 1L);
+            if (reuse) {
+                b.clear();
+                return b;
+            }
+            return new ArrayList<>(Math.min(maxSize, INITIAL_CAPACITY));
+        }
+
+        void cleanup() {
+            cancelled = true;
+            items.clear();
+            buffer = null;
+            timer.cancel();
+            worker.close();
+        }
+    }
+}
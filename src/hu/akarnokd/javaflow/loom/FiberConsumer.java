@@ -1,8 +1,10 @@
 package hu.akarnokd.javaflow.loom;
 
-import java.util.NoSuchElementException;
+import java.util.*;
 import java.util.concurrent.Flow.*;
 import java.util.concurrent.locks.*;
+import java.util.function.Consumer;
+import java.util.stream.*;
 
 public final class FiberConsumer<T> {
 
@@ -13,88 +15,140 @@ public final class FiberConsumer<T> {
     }
 
     public CloseableIterator<T> iterator() {
+        var fused = fusedIterator();
+        if (fused != null) {
+            return fused;
+        }
         var ic = new IteratorConsumer<T>();
         source.subscribe(ic);
         return ic;
     }
 
-    static final class IteratorConsumer<T> implements Subscriber<T>, CloseableIterator<T> {
+    /**
+     * Returns an iterator that keeps up to {@code prefetch} items ready in a ring buffer,
+     * replenishing them in batches of 75% of the prefetch amount, and only blocks
+     * the consuming context when the buffer is empty.
+     * <p>
+     * If the source is fusable, e.g., a {@link ContinuationPublisher}, its items are generated
+     * on demand in the consuming context instead and the {@code prefetch} is ignored.
+     * @param prefetch the number of items to request upfront, positive
+     * @return the new iterator
+     */
+    public CloseableIterator<T> iterator(int prefetch) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch > 0 required but it was " + prefetch);
+        }
+        var fused = fusedIterator();
+        if (fused != null) {
+            return fused;
+        }
+        var ic = new PrefetchIteratorConsumer<T>(prefetch);
+        source.subscribe(ic);
+        return ic;
+    }
 
-        Subscription upstream;
+    /**
+     * Returns a sequential {@link Stream} over the items handed over one by one, see {@link #iterator()}.
+     * Closing the stream cancels the upstream, thus it should be used with try-with-resources.
+     * @return the new stream
+     */
+    public Stream<T> stream() {
+        return stream(iterator());
+    }
 
-        volatile boolean hasValue;
-        T value;
+    /**
+     * Returns a sequential {@link Stream} over the items prefetched into a ring buffer, see {@link #iterator(int)}.
+     * Closing the stream cancels the upstream, thus it should be used with try-with-resources.
+     * <p>
+     * When turned {@link Stream#parallel()}, the stream splits off batches of items into arrays, growing by
+     * 1024 items each time, which the fork-join workers process while the source keeps producing on its own
+     * fiber or thread. A fusable source runs only when the next batch is split off, see {@link #iterator(int)}.
+     * @param prefetch the number of items to request upfront, positive
+     * @return the new stream
+     */
+    public Stream<T> stream(int prefetch) {
+        return stream(iterator(prefetch));
+    }
 
-        volatile boolean done;
-        Throwable error;
+    static <T> Stream<T> stream(CloseableIterator<T> iterator) {
+        return StreamSupport.stream(new BatchSpliterator<>(iterator), false)
+                .onClose(() -> {
+                    try {
+                        iterator.close();
+                    } catch (Exception ex) {
+                        throw new RuntimeException(ex);
+                    }
+                });
+    }
 
-        boolean consumerHasValue;
-        T consumerValue;
-        boolean consumerDone;
+    /**
+     * Pulls the items of a {@link FusablePublisher} directly in the consumer's context,
+     * without subscribing to it.
+     * @return the fused iterator or null if the source is not fusable
+     */
+    @SuppressWarnings("unchecked")
+    CloseableIterator<T> fusedIterator() {
+        if (source instanceof FusablePublisher) {
+            return ((FusablePublisher<T>)source).fusedIterator();
+        }
+        return null;
+    }
+
+    static final class IteratorConsumer<T> implements Subscriber<T>, CloseableIterator<T> {
+
+        static final Object TERMINATED = new Object();
 
-        final ReentrantLock producerLock;
+        final Handover<Object> handover;
 
-        final Condition producerReady;
+        final FlowMetrics metrics;
 
-        boolean producerFlag;
+        volatile Subscription upstream;
 
-        final ReentrantLock consumerLock;
+        volatile boolean cancelled;
 
-        final Condition consumerReady;
+        Throwable error;
 
-        boolean consumerFlag;
+        T consumerValue;
+        boolean consumerDone;
 
         IteratorConsumer() {
-            this.producerLock = new ReentrantLock();
-            this.producerReady = producerLock.newCondition();
-            this.consumerLock = new ReentrantLock();
-            this.consumerReady = consumerLock.newCondition();
+            this.handover = new Handover<>();
+            this.metrics = FlowMetrics.current();
         }
 
+        @SuppressWarnings("unchecked")
         @Override
         public boolean hasNext() {
-            if (consumerHasValue) {
+            if (consumerValue != null) {
                 return true;
             }
             if (!consumerDone) {
-                consumerReady();
-
+                Object v;
                 try {
-                    producerAwait();
+                    v = handover.get();
                 } catch (InterruptedException ex) {
                     consumerDone = true;
                     throw new RuntimeException(ex);
                 }
 
-                consumerDone = done;
-                var consumerError = error;
-
-                consumerHasValue = hasValue;
-                hasValue = false;
-                consumerValue = value;
-                value = null;
-
-
-                if (!consumerHasValue && consumerError != null) {
-                    throw new RuntimeException(consumerError);
-                }
-
-                return consumerHasValue;
-            } else {
-                var consumerError = error;
-                if (consumerError != null) {
-                    throw new RuntimeException(consumerError);
+                if (v != TERMINATED) {
+                    consumerValue = (T)v;
+                    return true;
                 }
+                consumerDone = true;
+            }
+            var consumerError = error;
+            if (consumerError != null) {
+                throw new RuntimeException(consumerError);
             }
             return false;
         }
 
         @Override
         public T next() {
-            if (consumerHasValue || hasNext()) {
+            if (consumerValue != null || hasNext()) {
                 var v = consumerValue;
                 consumerValue = null;
-                consumerHasValue = false;
                 return v;
             }
             throw new NoSuchElementException();
@@ -103,29 +157,178 @@ public final class FiberConsumer<T> {
         @Override
         public void onSubscribe(Subscription subscription) {
             this.upstream = subscription;
-            subscription.request(1);
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(1);
+            }
         }
 
         @Override
         public void onNext(T item) {
-            if (!done) {
+            if (!cancelled) {
+                metrics.emitted(FiberConsumer.class, null, 1L);
                 try {
-                    consumerAwait();
+                    handover.emit(item);
                 } catch (InterruptedException ex) {
                     upstream.cancel();
                     onError(ex);
                     return;
                 }
 
-                value = item;
-                hasValue = true;
+                upstream.request(1);
+            }
+        }
 
-                producerReady();
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminate();
+        }
 
-                upstream.request(1);
+        @Override
+        public void onComplete() {
+            terminate();
+        }
+
+        void terminate() {
+            if (!cancelled) {
+                try {
+                    handover.emit(TERMINATED);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
             }
         }
 
+        @Override
+        public void close() {
+            if (!cancelled && !consumerDone) {
+                metrics.cancelled(FiberConsumer.class, null);
+            }
+            cancelled = true;
+            consumerDone = true;
+            consumerValue = null;
+            var s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+            handover.poll(); // unblock producers
+        }
+    }
+
+    static final class PrefetchIteratorConsumer<T> implements Subscriber<T>, CloseableIterator<T> {
+
+        final SpscArrayQueue<T> queue;
+
+        final int prefetch;
+
+        final int limit;
+
+        final FlowMetrics metrics;
+
+        volatile Subscription upstream;
+
+        volatile boolean cancelled;
+
+        volatile boolean done;
+        Throwable error;
+
+        /** The consumer thread parked in {@link #hasNext()}, null if not waiting. */
+        volatile Thread waiter;
+
+        T consumerValue;
+
+        int consumed;
+
+        PrefetchIteratorConsumer(int prefetch) {
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.queue = new SpscArrayQueue<>(prefetch);
+            this.metrics = FlowMetrics.current();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (consumerValue != null) {
+                return true;
+            }
+            for (;;) {
+                if (cancelled) {
+                    return false;
+                }
+                var d = done;
+                var v = queue.poll();
+                if (v != null) {
+                    consumerValue = v;
+                    if (++consumed == limit) {
+                        consumed = 0;
+                        upstream.request(limit);
+                    }
+                    return true;
+                }
+                if (d) {
+                    var consumerError = error;
+                    if (consumerError != null) {
+                        throw new RuntimeException(consumerError);
+                    }
+                    return false;
+                }
+
+                waiter = Thread.currentThread();
+                if (queue.isEmpty() && !done) {
+                    park();
+                }
+                waiter = null;
+
+                if (Thread.interrupted()) {
+                    close();
+                    throw new RuntimeException(new InterruptedException());
+                }
+            }
+        }
+
+        void park() {
+            var m = metrics;
+            m.suspended(FiberConsumer.class, null);
+            var start = m.isEnabled() ? System.nanoTime() : 0L;
+            LockSupport.park(this);
+            if (m.isEnabled()) {
+                m.parked(FiberConsumer.class, null, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public T next() {
+            if (consumerValue != null || hasNext()) {
+                var v = consumerValue;
+                consumerValue = null;
+                return v;
+            }
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.upstream = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(prefetch);
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            if (!queue.offer(item)) {
+                upstream.cancel();
+                onError(new IllegalStateException("Queue full?! More items arrived than requested"));
+                return;
+            }
+            metrics.emitted(FiberConsumer.class, null, 1L);
+            producerReady();
+        }
+
         @Override
         public void onError(Throwable throwable) {
             error = throwable;
@@ -140,53 +343,88 @@ public final class FiberConsumer<T> {
         }
 
         @Override
-        public void close() throws Exception {
-            upstream.cancel();
-            consumerReady(); // unblock producers
+        public void close() {
+            if (!cancelled && !done) {
+                metrics.cancelled(FiberConsumer.class, null);
+            }
+            cancelled = true;
+            var s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+            consumerValue = null;
+            queue.clear();
         }
 
-        void consumerAwait() throws InterruptedException {
-            consumerLock.lock();
-            try {
-                while (!consumerFlag) {
-                    consumerReady.await();
-                }
-                consumerFlag = false;
-            } finally {
-                consumerLock.unlock();
+        void producerReady() {
+            var w = waiter;
+            if (w != null) {
+                metrics.resumed(FiberConsumer.class, null);
+                LockSupport.unpark(w);
             }
         }
+    }
+
+    /**
+     * Traverses a {@link CloseableIterator} and splits off arithmetically growing array batches,
+     * similar to the {@code Spliterator} of {@link Spliterators#spliteratorUnknownSize(Iterator, int)}.
+     * @param <T> the element type
+     */
+    static final class BatchSpliterator<T> implements Spliterator<T> {
+
+        static final int BATCH_UNIT = 1 << 10;
+
+        static final int MAX_BATCH = 1 << 25;
+
+        final CloseableIterator<T> iterator;
 
-        void consumerReady() {
-            consumerLock.lock();
-            try {
-                consumerFlag = true;
-                consumerReady.signalAll();
-            } finally {
-                consumerLock.unlock();
+        int batch;
+
+        BatchSpliterator(CloseableIterator<T> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (iterator.hasNext()) {
+                action.accept(iterator.next());
+                return true;
             }
+            return false;
         }
 
-        void producerAwait() throws InterruptedException {
-            producerLock.lock();
-            try {
-                while (!producerFlag) {
-                    producerReady.await();
-                }
-                producerFlag = false;
-            } finally {
-                producerLock.unlock();
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            var it = iterator;
+            while (it.hasNext()) {
+                action.accept(it.next());
             }
         }
 
-        void producerReady() {
-            producerLock.lock();
-            try {
-                producerFlag = true;
-                producerReady.signalAll();
-            } finally {
-                producerLock.unlock();
+        @Override
+        public Spliterator<T> trySplit() {
+            var it = iterator;
+            if (!it.hasNext()) {
+                return null;
             }
+            var n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+            var a = new Object[n];
+            var j = 0;
+            do {
+                a[j] = it.next();
+            } while (++j < n && it.hasNext());
+            batch = j;
+            return Spliterators.spliterator(a, 0, j, ORDERED | NONNULL);
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL;
         }
     }
 }
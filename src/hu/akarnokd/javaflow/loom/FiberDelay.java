@@ -0,0 +1,258 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.Flow.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Shifts the upstream items forward in time by the given delay, honoring the downstream's backpressure:
+ * an item due while the downstream has not requested is emitted once it does.
+ * <p>
+ * Up to {@code prefetch} items are requested upfront and replenished in batches as they are emitted. The
+ * due times are kept in a ring parallel to the item queue so the items are not wrapped, and the delays are
+ * tracked by the {@link TimingWheel} of the given {@link ExecutorPool} with one timer per subscription,
+ * scheduled for the oldest pending item only. Errors are signaled without delay.
+ * @param <T> the element type
+ */
+public final class FiberDelay<T> implements Flow.Publisher<T> {
+
+    final Flow.Publisher<T> source;
+
+    final ExecutorPool pool;
+
+    final long delayNanos;
+
+    final int prefetch;
+
+    public FiberDelay(Flow.Publisher<T> source, ExecutorPool pool, long delay, TimeUnit unit) {
+        this(source, pool, delay, unit, 128);
+    }
+
+    public FiberDelay(Flow.Publisher<T> source, ExecutorPool pool, long delay, TimeUnit unit, int prefetch) {
+        if (delay < 0L) {
+            throw new IllegalArgumentException("delay >= 0 required but it was " + delay);
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch > 0 required but it was " + prefetch);
+        }
+        this.source = source;
+        this.pool = pool;
+        this.delayNanos = unit.toNanos(delay);
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        source.subscribe(new FiberDelaySubscriber<>(subscriber, pool, delayNanos, prefetch));
+    }
+
+    static final class FiberDelaySubscriber<T> extends AtomicInteger implements Subscriber<T>, Subscription, Runnable {
+
+        private static final long serialVersionUID = 7703645311940275621L;
+
+        final Subscriber<? super T> downstream;
+
+        final ExecutorPool pool;
+
+        final ExecutorWorker worker;
+
+        final FlowMetrics metrics;
+
+        final long delayNanos;
+
+        final int prefetch;
+
+        final int limit;
+
+        final TimingWheel.Timer timer;
+
+        final SpscArrayQueue<T> items;
+
+        /** The due time of the item in the same slot of {@link #items}, published by its offer. */
+        final long[] dueTimes;
+
+        final AtomicLong requested;
+
+        Subscription upstream;
+
+        volatile boolean done;
+        Throwable error;
+
+        volatile boolean cancelled;
+
+        volatile Throwable badRequest;
+
+        /** Accessed only from {@link #onNext(Object)}. */
+        long produced;
+
+        /** The items taken from the queue, accessed only from the drain loop. */
+        long taken;
+
+        /** The oldest pending item and its due time, accessed only from the drain loop. */
+        T head;
+        long headDue;
+
+        /** The due time the timer was last scheduled for, accessed only from the drain loop. */
+        long timerDue;
+
+        long emitted;
+
+        int consumed;
+
+        FiberDelaySubscriber(Subscriber<? super T> downstream, ExecutorPool pool, long delayNanos, int prefetch) {
+            this.downstream = downstream;
+            this.pool = pool;
+            this.worker = pool.worker();
+            this.metrics = FlowMetrics.current();
+            this.delayNanos = delayNanos;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.timer = TimingWheel.timer(pool, this, worker);
+            this.items = new SpscArrayQueue<>(prefetch);
+            this.dueTimes = new long[items.length()];
+            this.requested = new AtomicLong();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.upstream = subscription;
+            downstream.onSubscribe(this);
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(T item) {
+            var p = produced;
+            dueTimes[(int)p & (dueTimes.length - 1)] = System.nanoTime() + delayNanos;
+            if (!items.offer(item)) {
+                upstream.cancel();
+                onError(new IllegalStateException("Queue full?! More items arrived than requested"));
+                return;
+            }
+            produced = p + 1;
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        /**
+         * The oldest pending item became due.
+         */
+        @Override
+        public void run() {
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                // signalled from the drain loop, serialized with the other signals
+                badRequest = Requests.badRequest(n);
+                drain();
+                return;
+            }
+            Requests.addCap(requested, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            metrics.cancelled(FiberDelay.class, pool);
+            cancelled = true;
+            upstream.cancel();
+            drain();
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            var missed = 1;
+            var e = emitted;
+
+            for (;;) {
+                if (cancelled) {
+                    cleanup();
+                    return;
+                }
+
+                var br = badRequest;
+                if (br != null) {
+                    upstream.cancel();
+                    cleanup();
+                    downstream.onError(br);
+                    return;
+                }
+
+                var d = done;
+                if (d && error != null) {
+                    cleanup();
+                    downstream.onError(error);
+                    return;
+                }
+
+                var h = head;
+                if (h == null) {
+                    h = items.peek();
+                    if (h != null) {
+                        // read the due time before poll() lets the producer reuse the slot
+                        headDue = dueTimes[(int)taken++ & (dueTimes.length - 1)];
+                        items.poll();
+                        head = h;
+                    }
+                }
+
+                if (h != null) {
+                    var wait = headDue - System.nanoTime();
+                    if (wait <= 0L) {
+                        if (e != requested.get()) {
+                            head = null;
+                            downstream.onNext(h);
+                            metrics.emitted(FiberDelay.class, pool, 1L);
+                            e++;
+                            if (++consumed == limit) {
+                                consumed = 0;
+                                upstream.request(limit);
+                            }
+                            continue;
+                        }
+                    } else if (timerDue != headDue || !timer.isScheduled()) {
+                        timerDue = headDue;
+                        timer.schedule(wait);
+                    }
+                } else if (d) {
+                    cleanup();
+                    downstream.onComplete();
+                    return;
+                }
+
+                emitted = e;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        void cleanup() {
+            cancelled = true;
+            head = null;
+            items.clear();
+            timer.cancel();
+            worker.close();
+        }
+    }
+}
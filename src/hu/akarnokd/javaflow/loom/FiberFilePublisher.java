@@ -0,0 +1,211 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Flow.Subscriber;
+
+/**
+ * Reads a file via {@link FileChannel} on a fiber of the given {@link ExecutorPool} and emits
+ * its content as read-only {@link ByteBuffer} chunks, suspending the reader fiber on backpressure
+ * the same way {@link FiberPublisher} does.
+ * <p>
+ * In mapped mode, the file is mapped in windows of about 64 MiB and the chunks are slices of the
+ * {@link java.nio.MappedByteBuffer}, which stay valid after {@code onNext}. Otherwise, the file is
+ * read into a pooled direct buffer which is reused for the next chunk, thus the chunk is only valid
+ * until {@code onNext} returns and has to be copied if needed later.
+ * <p>
+ * {@link #records(byte)} splits the content at a delimiter byte instead; records crossing chunk
+ * boundaries are the only ones copied.
+ */
+public final class FiberFilePublisher implements Flow.Publisher<ByteBuffer> {
+
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    /** The direct buffers kept around for reuse between subscriptions. */
+    static final int MAX_POOLED_BUFFERS = 16;
+
+    final Path path;
+
+    final ExecutorPool pool;
+
+    final int chunkSize;
+
+    final boolean mapped;
+
+    /** The record delimiter or -1 to emit the chunks as is. */
+    final int delimiter;
+
+    final ByteBufferPool buffers;
+
+    final Flow.Publisher<ByteBuffer> chunks;
+
+    public FiberFilePublisher(Path path, ExecutorPool pool) {
+        this(path, pool, DEFAULT_CHUNK_SIZE, true);
+    }
+
+    public FiberFilePublisher(Path path, ExecutorPool pool, int chunkSize, boolean mapped) {
+        this(path, pool, chunkSize, mapped, -1, null);
+    }
+
+    FiberFilePublisher(Path path, ExecutorPool pool, int chunkSize, boolean mapped, int delimiter, ByteBufferPool buffers) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize > 0 required but it was " + chunkSize);
+        }
+        this.path = path;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.mapped = mapped;
+        this.delimiter = delimiter;
+        this.buffers = buffers != null || mapped ? buffers : new ByteBufferPool(chunkSize, MAX_POOLED_BUFFERS);
+        this.chunks = new FiberSubscribeOnPublisher<>(new FiberPublisher<>(this::generate), pool);
+    }
+
+    /**
+     * Returns a publisher that emits the records of the file separated by the given delimiter,
+     * i.e., {@code '\n'} for lines, without the delimiter itself.
+     * <p>
+     * A record is a slice of the chunk it is contained in; records spanning multiple chunks are
+     * collected into a new heap buffer.
+     * @param delimiter the byte separating the records
+     * @return the new publisher
+     */
+    public FiberFilePublisher records(byte delimiter) {
+        return new FiberFilePublisher(path, pool, chunkSize, mapped, delimiter & 0xFF, buffers);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        chunks.subscribe(subscriber);
+    }
+
+    void generate(Emitter<ByteBuffer> emitter) throws Throwable {
+        RecordEmitter records = null;
+        var target = emitter;
+        if (delimiter >= 0) {
+            records = new RecordEmitter(emitter, (byte)delimiter);
+            target = records;
+        }
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (mapped) {
+                readMapped(channel, target);
+            } else {
+                readDirect(channel, target);
+            }
+        }
+        if (records != null) {
+            records.flush();
+        }
+    }
+
+    void readMapped(FileChannel channel, Emitter<ByteBuffer> target) throws Throwable {
+        var size = channel.size();
+        var window = Math.max(chunkSize, MAP_WINDOW / chunkSize * chunkSize);
+        for (long offset = 0L; offset < size; offset += window) {
+            var map = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(window, size - offset));
+            for (int i = 0, n = map.limit(); i < n; i += chunkSize) {
+                target.emit(map.slice(i, Math.min(chunkSize, n - i)));
+            }
+        }
+    }
+
+    void readDirect(FileChannel channel, Emitter<ByteBuffer> target) throws Throwable {
+        var buffer = buffers.acquire();
+        try {
+            // the read-only view shares the content, so the chunks need no allocation
+            var view = buffer.asReadOnlyBuffer();
+            var eof = false;
+            while (!eof) {
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                var n = buffer.position();
+                if (n != 0) {
+                    view.limit(n).position(0);
+                    target.emit(view);
+                }
+            }
+        } finally {
+            buffers.release(buffer);
+        }
+    }
+
+    /**
+     * Splits the chunks into delimited records, collecting the parts of a record spanning
+     * multiple chunks into a heap buffer sized after the previous such record.
+     */
+    static final class RecordEmitter implements Emitter<ByteBuffer> {
+
+        final Emitter<ByteBuffer> downstream;
+
+        final byte delimiter;
+
+        ByteBuffer carry;
+
+        int carryCapacity = 256;
+
+        RecordEmitter(Emitter<ByteBuffer> downstream, byte delimiter) {
+            this.downstream = downstream;
+            this.delimiter = delimiter;
+        }
+
+        @Override
+        public void emit(ByteBuffer chunk) throws Throwable {
+            var start = chunk.position();
+            var end = chunk.limit();
+            for (int i = start; i < end; i++) {
+                if (chunk.get(i) == delimiter) {
+                    var c = carry;
+                    if (c != null && c.position() != 0) {
+                        append(chunk, start, i);
+                        emitCarry();
+                    } else {
+                        downstream.emit(chunk.slice(start, i - start));
+                    }
+                    start = i + 1;
+                }
+            }
+            if (start != end) {
+                append(chunk, start, end);
+            }
+        }
+
+        void append(ByteBuffer chunk, int from, int to) {
+            var n = to - from;
+            var c = carry;
+            if (c == null) {
+                c = ByteBuffer.allocate(Math.max(n, carryCapacity));
+                carry = c;
+            } else if (c.remaining() < n) {
+                var grown = ByteBuffer.allocate(Math.max(c.position() + n, c.capacity() * 2));
+                c.flip();
+                grown.put(c);
+                c = grown;
+                carry = c;
+                carryCapacity = grown.capacity();
+            }
+            c.put(chunk.slice(from, n));
+        }
+
+        void emitCarry() throws Throwable {
+            var c = carry;
+            // the record keeps the buffer, so it stays valid after onNext like the mapped slices
+            carry = null;
+            downstream.emit(c.flip().asReadOnlyBuffer());
+        }
+
+        void flush() throws Throwable {
+            var c = carry;
+            if (c != null && c.position() != 0) {
+                emitCarry();
+            }
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.Flow.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.Function;
+
+/**
+ * Maps each upstream item into a {@link Flow.Publisher} and merges the items of up to
+ * {@code maxConcurrency} such inner publishers at once, each subscribed to from its own fiber
+ * on the {@link ExecutorWorker} of the given {@link ExecutorPool}.
+ * <p>
+ * Each inner publisher is requested {@code prefetch} items upfront and replenished in batches of 75% of it
+ * as its items get emitted downstream. The inner items are merged through a lock-free multi-producer queue.
+ * @param <T> the upstream element type
+ * @param <R> the result element type
+ */
+public final class FiberFlatMap<T, R> implements Flow.Publisher<R> {
+
+    final Flow.Publisher<T> source;
+
+    final Function<? super T, ? extends Flow.Publisher<? extends R>> mapper;
+
+    final ExecutorPool pool;
+
+    final int maxConcurrency;
+
+    final int prefetch;
+
+    public FiberFlatMap(Flow.Publisher<T> source, Function<? super T, ? extends Flow.Publisher<? extends R>> mapper,
+            ExecutorPool pool, int maxConcurrency, int prefetch) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency > 0 required but it was " + maxConcurrency);
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch > 0 required but it was " + prefetch);
+        }
+        this.source = source;
+        this.mapper = mapper;
+        this.pool = pool;
+        this.maxConcurrency = maxConcurrency;
+        this.prefetch = prefetch;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super R> subscriber) {
+        source.subscribe(new FlatMapSubscriber<>(subscriber, mapper, pool, maxConcurrency, prefetch));
+    }
+
+    static final class FlatMapSubscriber<T, R> extends AtomicInteger implements Subscriber<T>, Subscription {
+
+        private static final long serialVersionUID = 6452390283437564117L;
+
+        final Subscriber<? super R> downstream;
+
+        final Function<? super T, ? extends Flow.Publisher<? extends R>> mapper;
+
+        final ExecutorPool pool;
+
+        final ExecutorWorker worker;
+
+        final FlowMetrics metrics;
+
+        final int maxConcurrency;
+
+        final int outerLimit;
+
+        final int prefetch;
+
+        final int innerLimit;
+
+        final MpscLinkedQueue<R> queue;
+
+        final Set<InnerSubscriber<R>> inners;
+
+        final AtomicInteger active;
+
+        final AtomicInteger innersCompleted;
+
+        final AtomicReference<Throwable> error;
+
+        final AtomicLong requested;
+
+        Subscription upstream;
+
+        volatile boolean done;
+
+        volatile boolean cancelled;
+
+        long emitted;
+
+        int outerConsumed;
+
+        FlatMapSubscriber(Subscriber<? super R> downstream, Function<? super T, ? extends Flow.Publisher<? extends R>> mapper,
+                ExecutorPool pool, int maxConcurrency, int prefetch) {
+            this.downstream = downstream;
+            this.mapper = mapper;
+            this.pool = pool;
+            this.worker = pool.worker();
+            this.metrics = FlowMetrics.current();
+            this.maxConcurrency = maxConcurrency;
+            this.outerLimit = maxConcurrency - (maxConcurrency >> 2);
+            this.prefetch = prefetch;
+            this.innerLimit = prefetch - (prefetch >> 2);
+            this.queue = new MpscLinkedQueue<>();
+            this.inners = ConcurrentHashMap.newKeySet();
+            this.active = new AtomicInteger();
+            this.innersCompleted = new AtomicInteger();
+            this.error = new AtomicReference<>();
+            this.requested = new AtomicLong();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.upstream = subscription;
+            downstream.onSubscribe(this);
+            subscription.request(maxConcurrency == Integer.MAX_VALUE ? Long.MAX_VALUE : maxConcurrency);
+        }
+
+        @Override
+        public void onNext(T item) {
+            if (done || cancelled) {
+                return;
+            }
+            Flow.Publisher<? extends R> p;
+            try {
+                p = mapper.apply(item);
+            } catch (Throwable ex) {
+                upstream.cancel();
+                onError(ex);
+                return;
+            }
+
+            var inner = new InnerSubscriber<R>(this);
+            inners.add(inner);
+            if (cancelled) {
+                // cancel() may have missed this inner
+                inner.cancel();
+            }
+            active.getAndIncrement();
+            worker.startFiber(() -> p.subscribe(inner));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error.compareAndSet(null, throwable);
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                // signalled from the drain loop, serialized with the other signals
+                error.compareAndSet(null, Requests.badRequest(n));
+                drain();
+                return;
+            }
+            Requests.addCap(requested, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                metrics.cancelled(FiberFlatMap.class, pool);
+                cancelled = true;
+                upstream.cancel();
+                cancelInners();
+                drain();
+            }
+        }
+
+        void cancelInners() {
+            for (var inner : inners) {
+                inner.cancel();
+            }
+            inners.clear();
+        }
+
+        void innerNext(InnerSubscriber<R> inner, R item) {
+            queue.offer(inner, item);
+            drain();
+        }
+
+        void innerError(InnerSubscriber<R> inner, Throwable throwable) {
+            error.compareAndSet(null, throwable);
+            inners.remove(inner);
+            active.getAndDecrement();
+            drain();
+        }
+
+        void innerComplete(InnerSubscriber<R> inner) {
+            inners.remove(inner);
+            active.getAndDecrement();
+            innersCompleted.getAndIncrement();
+            drain();
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            var missed = 1;
+            var q = queue;
+            var e = emitted;
+
+            for (;;) {
+                if (cancelled) {
+                    q.clear();
+                    worker.close();
+                    return;
+                }
+
+                if (error.get() != null) {
+                    cancelled = true;
+                    upstream.cancel();
+                    cancelInners();
+                    q.clear();
+                    worker.close();
+                    downstream.onError(error.get());
+                    return;
+                }
+
+                var c = innersCompleted.getAndSet(0);
+                if (c != 0 && maxConcurrency != Integer.MAX_VALUE) {
+                    var oc = outerConsumed + c;
+                    if (oc >= outerLimit) {
+                        upstream.request(oc);
+                        oc = 0;
+                    }
+                    outerConsumed = oc;
+                }
+
+                var r = requested.get();
+                var before = e;
+                while (e != r) {
+                    var v = q.poll();
+                    if (v == null) {
+                        break;
+                    }
+                    var inner = q.polledInner;
+
+                    downstream.onNext(v);
+
+                    e++;
+
+                    if (++inner.consumed == innerLimit) {
+                        inner.consumed = 0;
+                        inner.request(innerLimit);
+                    }
+
+                    if (cancelled) {
+                        break;
+                    }
+                }
+
+                if (e != before) {
+                    metrics.emitted(FiberFlatMap.class, pool, e - before);
+                }
+
+                if (!cancelled && done && active.get() == 0 && q.isEmpty()) {
+                    worker.close();
+                    downstream.onComplete();
+                    return;
+                }
+
+                emitted = e;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    static final class InnerSubscriber<R> extends AtomicReference<Subscription> implements Subscriber<R> {
+
+        private static final long serialVersionUID = -4113893421473537431L;
+
+        final FlatMapSubscriber<?, R> parent;
+
+        /** Accessed only from the drain loop. */
+        int consumed;
+
+        InnerSubscriber(FlatMapSubscriber<?, R> parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            if (compareAndSet(null, subscription)) {
+                subscription.request(parent.prefetch);
+            } else {
+                subscription.cancel();
+            }
+        }
+
+        @Override
+        public void onNext(R item) {
+            parent.innerNext(this, item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            parent.innerError(this, throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            parent.innerComplete(this);
+        }
+
+        void request(long n) {
+            var s = get();
+            if (s != FiberSubscribeOnPublisher.CancelledSubscription.INSTANCE) {
+                s.request(n);
+            }
+        }
+
+        void cancel() {
+            var s = getAndSet(FiberSubscribeOnPublisher.CancelledSubscription.INSTANCE);
+            if (s != null && s != FiberSubscribeOnPublisher.CancelledSubscription.INSTANCE) {
+                s.cancel();
+            }
+        }
+    }
+
+    /**
+     * An unbounded multi-producer single-consumer linked queue (Vyukov-style) whose nodes
+     * also record the inner subscriber the value came from.
+     * @param <R> the value type
+     */
+    static final class MpscLinkedQueue<R> {
+
+        final AtomicReference<Node<R>> tail;
+
+        /** Accessed only by the consumer. */
+        Node<R> head;
+
+        /** The inner of the value last returned by {@link #poll()}, accessed only by the consumer. */
+        InnerSubscriber<R> polledInner;
+
+        MpscLinkedQueue() {
+            var stub = new Node<R>(null, null);
+            this.head = stub;
+            this.tail = new AtomicReference<>(stub);
+        }
+
+        void offer(InnerSubscriber<R> inner, R value) {
+            var node = new Node<R>(inner, value);
+            var prev = tail.getAndSet(node);
+            prev.lazySet(node);
+        }
+
+        R poll() {
+            var next = head.get();
+            if (next == null) {
+                if (head == tail.get()) {
+                    return null;
+                }
+                // a producer has swapped the tail but hasn't linked it yet
+                while ((next = head.get()) == null) {
+                    Thread.onSpinWait();
+                }
+            }
+            // the node becomes the new stub, don't let it retain the item
+            head = next;
+            var v = next.value;
+            next.value = null;
+            polledInner = next.inner;
+            next.inner = null;
+            return v;
+        }
+
+        boolean isEmpty() {
+            return head == tail.get();
+        }
+
+        void clear() {
+            while (poll() != null) { }
+            polledInner = null;
+        }
+    }
+
+    static final class Node<R> extends AtomicReference<Node<R>> {
+
+        private static final long serialVersionUID = -3385374516423785406L;
+
+        /** Cleared by the consumer once polled. */
+        InnerSubscriber<R> inner;
+
+        /** Cleared by the consumer once polled. */
+        R value;
+
+        Node(InnerSubscriber<R> inner, R value) {
+            this.inner = inner;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Flow.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Maps each upstream item into zero or more items via a {@link FiberMapper} running on a fiber
+ * of the {@link ExecutorWorker} of the given {@link ExecutorPool}, with up to
+ * {@code maxConcurrency} mappings in flight.
+ * <p>
+ * Each mapping buffers up to {@code prefetch} output items and suspends in {@link Emitter#emit(Object)}
+ * when this buffer is full. In ordered mode, the outputs are emitted in the order of the upstream items,
+ * otherwise as they become available.
+ * @param <T> the upstream element type
+ * @param <R> the result element type
+ */
+public final class FiberMap<T, R> implements Flow.Publisher<R> {
+
+    final Flow.Publisher<T> source;
+
+    final FiberMapper<? super T, R> mapper;
+
+    final ExecutorPool pool;
+
+    final int prefetch;
+
+    final int maxConcurrency;
+
+    final boolean ordered;
+
+    public FiberMap(Flow.Publisher<T> source, FiberMapper<? super T, R> mapper, ExecutorPool pool, int prefetch) {
+        this(source, mapper, pool, prefetch, 1, true);
+    }
+
+    public FiberMap(Flow.Publisher<T> source, FiberMapper<? super T, R> mapper, ExecutorPool pool,
+            int prefetch, int maxConcurrency, boolean ordered) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch > 0 required but it was " + prefetch);
+        }
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency > 0 required but it was " + maxConcurrency);
+        }
+        this.source = source;
+        this.mapper = mapper;
+        this.pool = pool;
+        this.prefetch = prefetch;
+        this.maxConcurrency = maxConcurrency;
+        this.ordered = ordered;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super R> subscriber) {
+        source.subscribe(new FiberMapSubscriber<>(subscriber, mapper, pool, prefetch, maxConcurrency, ordered));
+    }
+
+    static final RuntimeException STOP = new RuntimeException("Cancellation from downstream");
+
+    static final class FiberMapSubscriber<T, R> extends AtomicInteger implements Subscriber<T>, Subscription {
+
+        private static final long serialVersionUID = -1986453227851423493L;
+
+        final Subscriber<? super R> downstream;
+
+        final FiberMapper<? super T, R> mapper;
+
+        final ExecutorPool pool;
+
+        final ExecutorWorker worker;
+
+        final FlowMetrics metrics;
+
+        final int prefetch;
+
+        final int limit;
+
+        final int maxConcurrency;
+
+        final boolean ordered;
+
+        final SpscArrayQueue<T> items;
+
+        /** Accessed only from the drain loop, in the order the mappings were started. */
+        final ArrayDeque<MapTask<T, R>> active;
+
+        /** The output queues of the finished mappings for reuse, accessed only from the drain loop. */
+        final ArrayDeque<SpscArrayQueue<R>> freeQueues;
+
+        final AtomicLong requested;
+
+        Subscription upstream;
+
+        volatile boolean upstreamDone;
+        Throwable upstreamError;
+
+        volatile boolean cancelled;
+
+        volatile Throwable badRequest;
+
+        long emitted;
+
+        int consumed;
+
+        FiberMapSubscriber(Subscriber<? super R> downstream, FiberMapper<? super T, R> mapper,
+                ExecutorPool pool, int prefetch, int maxConcurrency, boolean ordered) {
+            this.downstream = downstream;
+            this.mapper = mapper;
+            this.pool = pool;
+            this.worker = pool.worker();
+            this.metrics = FlowMetrics.current();
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.maxConcurrency = maxConcurrency;
+            this.ordered = ordered;
+            this.items = new SpscArrayQueue<>(prefetch);
+            this.active = new ArrayDeque<>();
+            this.freeQueues = new ArrayDeque<>();
+            this.requested = new AtomicLong();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.upstream = subscription;
+            downstream.onSubscribe(this);
+            subscription.request(prefetch);
+        }
+
+        @Override
+        public void onNext(T item) {
+            if (!items.offer(item)) {
+                upstream.cancel();
+                onError(new IllegalStateException("Queue full?! More items arrived than requested"));
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            upstreamError = throwable;
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                // signalled from the drain loop, serialized with the other signals
+                badRequest = Requests.badRequest(n);
+                drain();
+                return;
+            }
+            Requests.addCap(requested, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            metrics.cancelled(FiberMap.class, pool);
+            cancelled = true;
+            upstream.cancel();
+            drain();
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            var missed = 1;
+            var active = this.active;
+            var e = emitted;
+
+            for (;;) {
+                var again = false;
+
+                if (cancelled) {
+                    cleanup();
+                    return;
+                }
+
+                var br = badRequest;
+                if (br != null) {
+                    upstream.cancel();
+                    cleanup();
+                    downstream.onError(br);
+                    return;
+                }
+
+                var d = upstreamDone;
+                if (d && upstreamError != null) {
+                    upstream.cancel();
+                    cleanup();
+                    downstream.onError(upstreamError);
+                    return;
+                }
+
+                while (active.size() < maxConcurrency) {
+                    var item = items.poll();
+                    if (item == null) {
+                        break;
+                    }
+                    var queue = freeQueues.poll();
+                    if (queue == null) {
+                        queue = new SpscArrayQueue<>(prefetch);
+                    }
+                    var task = new MapTask<T, R>(this, item, queue);
+                    active.offer(task);
+                    worker.startFiber(task);
+
+                    if (++consumed == limit) {
+                        consumed = 0;
+                        upstream.request(limit);
+                    }
+                }
+
+                var r = requested.get();
+                var it = active.iterator();
+                while (it.hasNext()) {
+                    var task = it.next();
+                    var taskDone = task.done;
+                    var queue = task.queue;
+
+                    var before = e;
+                    while (e != r) {
+                        var v = queue.poll();
+                        if (v == null) {
+                            break;
+                        }
+
+                        downstream.onNext(v);
+
+                        e++;
+                    }
+
+                    if (cancelled) {
+                        cleanup();
+                        return;
+                    }
+
+                    if (e != before) {
+                        metrics.emitted(FiberMap.class, pool, e - before);
+                        task.producerReady();
+                    }
+
+                    if (taskDone && queue.isEmpty()) {
+                        var ex = task.error;
+                        if (ex != null) {
+                            upstream.cancel();
+                            cleanup();
+                            downstream.onError(ex);
+                            return;
+                        }
+                        it.remove();
+                        // the mapping has returned and its output got emitted, the queue can serve the next one
+                        if (freeQueues.size() < maxConcurrency) {
+                            freeQueues.offer(queue);
+                        }
+                        again = true;
+                    } else if (ordered) {
+                        break;
+                    }
+                }
+
+                if (d && active.isEmpty() && items.isEmpty()) {
+                    worker.close();
+                    downstream.onComplete();
+                    return;
+                }
+
+                if (again) {
+                    continue;
+                }
+
+                emitted = e;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        void cleanup() {
+            cancelled = true;
+            items.clear();
+            for (var task : active) {
+                task.producerReady();
+            }
+            active.clear();
+            freeQueues.clear();
+            worker.close();
+        }
+    }
+
+    static final class MapTask<T, R> implements Runnable, Emitter<R> {
+
+        final FiberMapSubscriber<T, R> parent;
+
+        final SpscArrayQueue<R> queue;
+
+        T item;
+
+        volatile boolean done;
+        Throwable error;
+
+        /** The mapper parked in {@link #emit(Object)}, null if not waiting. */
+        volatile Thread waiter;
+
+        MapTask(FiberMapSubscriber<T, R> parent, T item, SpscArrayQueue<R> queue) {
+            this.parent = parent;
+            this.item = item;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            var v = item;
+            item = null;
+            try {
+                if (!parent.cancelled) {
+                    parent.mapper.map(v, this);
+                }
+            } catch (Throwable ex) {
+                if (ex != STOP) {
+                    error = ex;
+                }
+            }
+            done = true;
+            parent.drain();
+        }
+
+        @Override
+        public void emit(R item) throws Throwable {
+            Objects.requireNonNull(item, "The mapper emitted a null item");
+            if (!queue.offer(item)) {
+                // register first, then retry so the drain loop either sees the waiter or the freed slot is seen here
+                var m = parent.metrics;
+                m.suspended(FiberMap.class, parent.pool);
+                var start = m.isEnabled() ? System.nanoTime() : 0L;
+                waiter = Thread.currentThread();
+                try {
+                    while (!queue.offer(item)) {
+                        if (parent.cancelled) {
+                            throw STOP;
+                        }
+                        LockSupport.park(this);
+                        if (Thread.interrupted()) {
+                            throw new InterruptedException();
+                        }
+                    }
+                } finally {
+                    waiter = null;
+                    if (m.isEnabled()) {
+                        m.parked(FiberMap.class, parent.pool, System.nanoTime() - start);
+                    }
+                }
+            }
+            if (parent.cancelled) {
+                throw STOP;
+            }
+            parent.drain();
+        }
+
+        void producerReady() {
+            // the queue's slots were freed with lazySet, order them before reading the waiter
+            VarHandle.fullFence();
+            var w = waiter;
+            if (w != null) {
+                parent.metrics.resumed(FiberMap.class, parent.pool);
+                LockSupport.unpark(w);
+            }
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Flow.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Distributes the upstream items round-robin onto {@code rails} rails, each running the {@link FiberMapper}
+ * on a fiber of its own {@link ExecutorWorker}, then merges the outputs of the rails back into one sequence,
+ * either in the order of the upstream items or as they become available.
+ * <p>
+ * With a {@link ParallelExecutorPool} in round-robin mode and no more rails than its parallelism, each rail
+ * runs on a distinct executor. Each rail buffers up to {@code prefetch} upstream items and {@code prefetch}
+ * output items; the upstream is requested in batches once every rail consumed 75% of its prefetch amount.
+ * A mapper suspends in {@link Emitter#emit(Object)} while its output buffer is full.
+ * @param <T> the upstream element type
+ * @param <R> the result element type
+ */
+public final class FiberParallel<T, R> implements Flow.Publisher<R> {
+
+    final Flow.Publisher<T> source;
+
+    final FiberMapper<? super T, R> mapper;
+
+    final ExecutorPool pool;
+
+    final int rails;
+
+    final int prefetch;
+
+    final boolean ordered;
+
+    public FiberParallel(Flow.Publisher<T> source, FiberMapper<? super T, R> mapper, ExecutorPool pool, int rails) {
+        this(source, mapper, pool, rails, 128, true);
+    }
+
+    public FiberParallel(Flow.Publisher<T> source, FiberMapper<? super T, R> mapper, ExecutorPool pool,
+            int rails, int prefetch, boolean ordered) {
+        if (rails <= 0) {
+            throw new IllegalArgumentException("rails > 0 required but it was " + rails);
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch > 0 required but it was " + prefetch);
+        }
+        this.source = source;
+        this.mapper = mapper;
+        this.pool = pool;
+        this.rails = rails;
+        this.prefetch = prefetch;
+        this.ordered = ordered;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super R> subscriber) {
+        source.subscribe(new FiberParallelSubscriber<>(subscriber, mapper, pool, rails, prefetch, ordered));
+    }
+
+    static final RuntimeException STOP = new RuntimeException("Cancellation from downstream");
+
+    /** Separates the outputs of consecutive upstream items of a rail in ordered mode. */
+    static final Object ITEM_END = new Object();
+
+    /**
+     * The merge runs as a drain loop; in ordered mode, it takes the outputs of the rails in the same
+     * round-robin order the upstream items were distributed, moving to the next rail after an {@link #ITEM_END}.
+     * @param <T> the upstream element type
+     * @param <R> the result element type
+     */
+    static final class FiberParallelSubscriber<T, R> extends AtomicInteger implements Subscriber<T>, Subscription {
+
+        private static final long serialVersionUID = 3858167410474226553L;
+
+        final Subscriber<? super R> downstream;
+
+        final FiberMapper<? super T, R> mapper;
+
+        final ExecutorPool pool;
+
+        final FlowMetrics metrics;
+
+        final Rail<T, R>[] rails;
+
+        final int prefetch;
+
+        final int limit;
+
+        final boolean ordered;
+
+        final AtomicLong requested;
+
+        final AtomicReference<Throwable> railError;
+
+        Subscription upstream;
+
+        volatile boolean upstreamDone;
+        Throwable upstreamError;
+
+        volatile boolean cancelled;
+
+        volatile Throwable badRequest;
+
+        /** The rail receiving the next upstream item, accessed only from {@link #onNext(Object)}. */
+        int dispatchIndex;
+
+        /** The rail to merge from next, accessed only from the drain loop. */
+        int mergeIndex;
+
+        /** The number of upstream batches requested after the initial prefetch, accessed only from the drain loop. */
+        long replenished;
+
+        long emitted;
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        FiberParallelSubscriber(Subscriber<? super R> downstream, FiberMapper<? super T, R> mapper,
+                ExecutorPool pool, int rails, int prefetch, boolean ordered) {
+            this.downstream = downstream;
+            this.mapper = mapper;
+            this.pool = pool;
+            this.metrics = FlowMetrics.current();
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            this.ordered = ordered;
+            this.requested = new AtomicLong();
+            this.railError = new AtomicReference<>();
+            this.rails = new Rail[rails];
+            for (int i = 0; i < rails; i++) {
+                this.rails[i] = new Rail<>(this, pool.worker(), prefetch);
+            }
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.upstream = subscription;
+            downstream.onSubscribe(this);
+            for (var rail : rails) {
+                rail.worker.startFiber(rail);
+            }
+            subscription.request(initialRequest());
+        }
+
+        long initialRequest() {
+            var n = (long)rails.length * prefetch;
+            return n < 0L ? Long.MAX_VALUE : n;
+        }
+
+        @Override
+        public void onNext(T item) {
+            var i = dispatchIndex;
+            var rail = rails[i];
+            if (!rail.inputs.offer(item)) {
+                upstream.cancel();
+                onError(new IllegalStateException("Queue full?! More items arrived than requested"));
+                return;
+            }
+            rail.inputReady();
+            dispatchIndex = i + 1 == rails.length ? 0 : i + 1;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            upstreamError = throwable;
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            upstreamDone = true;
+            for (var rail : rails) {
+                rail.inputReady();
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                // signalled from the drain loop, serialized with the other signals
+                badRequest = Requests.badRequest(n);
+                drain();
+                return;
+            }
+            Requests.addCap(requested, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            metrics.cancelled(FiberParallel.class, pool);
+            cancelled = true;
+            upstream.cancel();
+            drain();
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            var missed = 1;
+            var e = emitted;
+            var rails = this.rails;
+            var n = rails.length;
+
+            for (;;) {
+                if (cancelled) {
+                    cleanup();
+                    return;
+                }
+
+                var br = badRequest;
+                if (br != null) {
+                    upstream.cancel();
+                    cleanup();
+                    downstream.onError(br);
+                    return;
+                }
+
+                var ex = railError.get();
+                if (ex == null && upstreamDone) {
+                    ex = upstreamError;
+                }
+                if (ex != null) {
+                    upstream.cancel();
+                    cleanup();
+                    downstream.onError(ex);
+                    return;
+                }
+
+                replenish();
+
+                var r = requested.get();
+                var before = e;
+
+                if (ordered) {
+                    for (;;) {
+                        var rail = rails[mergeIndex];
+                        var v = rail.outputs.peek();
+                        if (v == null) {
+                            break;
+                        }
+                        if (v == ITEM_END) {
+                            rail.outputs.poll();
+                            rail.outputReady();
+                            mergeIndex = mergeIndex + 1 == n ? 0 : mergeIndex + 1;
+                            continue;
+                        }
+                        if (e == r) {
+                            break;
+                        }
+                        rail.outputs.poll();
+                        rail.outputReady();
+                        downstream.onNext(emitted(v));
+                        e++;
+                    }
+                } else {
+                    for (int i = 0; i < n && e != r; i++) {
+                        var rail = rails[mergeIndex];
+                        var polled = false;
+                        while (e != r) {
+                            var v = rail.outputs.poll();
+                            if (v == null) {
+                                break;
+                            }
+                            polled = true;
+                            downstream.onNext(emitted(v));
+                            e++;
+                        }
+                        if (polled) {
+                            rail.outputReady();
+                        }
+                        mergeIndex = mergeIndex + 1 == n ? 0 : mergeIndex + 1;
+                    }
+                }
+
+                if (cancelled) {
+                    cleanup();
+                    return;
+                }
+
+                if (e != before) {
+                    metrics.emitted(FiberParallel.class, pool, e - before);
+                }
+
+                var allDone = true;
+                for (var rail : rails) {
+                    if (!rail.done || !rail.outputs.isEmpty()) {
+                        allDone = false;
+                        break;
+                    }
+                }
+                if (allDone) {
+                    cleanup();
+                    downstream.onComplete();
+                    return;
+                }
+
+                emitted = e;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Requests the next batches from the upstream once every rail consumed its share of the previous ones,
+         * so the strict round-robin distribution never overflows a rail.
+         */
+        void replenish() {
+            var min = Long.MAX_VALUE;
+            for (var rail : rails) {
+                min = Math.min(min, rail.rounds);
+            }
+            var r = replenished;
+            if (min > r) {
+                replenished = min;
+                upstream.request((min - r) * rails.length * limit);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        R emitted(Object v) {
+            return (R)v;
+        }
+
+        void cleanup() {
+            cancelled = true;
+            for (var rail : rails) {
+                rail.outputs.clear();
+                rail.inputReady();
+                rail.outputReady();
+            }
+        }
+    }
+
+    static final class Rail<T, R> implements Runnable, Emitter<R> {
+
+        final FiberParallelSubscriber<T, R> parent;
+
+        final ExecutorWorker worker;
+
+        final SpscArrayQueue<T> inputs;
+
+        final SpscArrayQueue<Object> outputs;
+
+        /** The number of times the rail consumed {@code limit} inputs, written only by the rail. */
+        volatile long rounds;
+
+        volatile boolean done;
+
+        /** The rail fiber parked waiting for inputs, null if not waiting. */
+        volatile Thread inputWaiter;
+
+        /** The mapper parked in {@link #emit(Object)}, null if not waiting. */
+        volatile Thread outputWaiter;
+
+        int consumed;
+
+        Rail(FiberParallelSubscriber<T, R> parent, ExecutorWorker worker, int prefetch) {
+            this.parent = parent;
+            this.worker = worker;
+            this.inputs = new SpscArrayQueue<>(prefetch);
+            this.outputs = new SpscArrayQueue<>(prefetch);
+        }
+
+        @Override
+        public void run() {
+            var p = parent;
+            try {
+                for (;;) {
+                    if (p.cancelled) {
+                        break;
+                    }
+                    var d = p.upstreamDone;
+                    var v = inputs.poll();
+                    if (v == null) {
+                        if (d) {
+                            break;
+                        }
+                        awaitInput();
+                        continue;
+                    }
+                    if (++consumed == p.limit) {
+                        consumed = 0;
+                        rounds = rounds + 1;
+                        p.drain();
+                    }
+                    p.mapper.map(v, this);
+                    if (p.ordered) {
+                        offer(ITEM_END);
+                    }
+                }
+            } catch (Throwable ex) {
+                if (ex != STOP) {
+                    // before done so the drain loop doesn't see a normal completion
+                    p.railError.compareAndSet(null, ex);
+                }
+            } finally {
+                inputs.clear();
+                done = true;
+                p.drain();
+                worker.close();
+            }
+        }
+
+        void awaitInput() throws InterruptedException {
+            var p = parent;
+            var m = p.metrics;
+            m.suspended(FiberParallel.class, p.pool);
+            var start = m.isEnabled() ? System.nanoTime() : 0L;
+            inputWaiter = Thread.currentThread();
+            try {
+                if (inputs.isEmpty() && !p.upstreamDone && !p.cancelled) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            } finally {
+                inputWaiter = null;
+                if (m.isEnabled()) {
+                    m.parked(FiberParallel.class, p.pool, System.nanoTime() - start);
+                }
+            }
+        }
+
+        @Override
+        public void emit(R item) throws Throwable {
+            Objects.requireNonNull(item, "The mapper emitted a null item");
+            offer(item);
+        }
+
+        void offer(Object item) throws Throwable {
+            var p = parent;
+            if (!outputs.offer(item)) {
+                // register first, then retry so the drain loop either sees the waiter or the freed slot is seen here
+                var m = p.metrics;
+                m.suspended(FiberParallel.class, p.pool);
+                var start = m.isEnabled() ? System.nanoTime() : 0L;
+                outputWaiter = Thread.currentThread();
+                try {
+                    while (!outputs.offer(item)) {
+                        if (p.cancelled) {
+                            throw STOP;
+                        }
+                        LockSupport.park(this);
+                        if (Thread.interrupted()) {
+                            throw new InterruptedException();
+                        }
+                    }
+                } finally {
+                    outputWaiter = null;
+                    if (m.isEnabled()) {
+                        m.parked(FiberParallel.class, p.pool, System.nanoTime() - start);
+                    }
+                }
+            }
+            if (p.cancelled) {
+                throw STOP;
+            }
+            p.drain();
+        }
+
+        void inputReady() {
+            var w = inputWaiter;
+            if (w != null) {
+                parent.metrics.resumed(FiberParallel.class, parent.pool);
+                LockSupport.unpark(w);
+            }
+        }
+
+        void outputReady() {
+            // the queue's slots were freed with lazySet, order them before reading the waiter
+            VarHandle.fullFence();
+            var w = outputWaiter;
+            if (w != null) {
+                parent.metrics.resumed(FiberParallel.class, parent.pool);
+                LockSupport.unpark(w);
+            }
+        }
+    }
+}
@@ -3,7 +3,7 @@ package hu.akarnokd.javaflow.loom;
 import java.util.concurrent.Flow;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.*;
+import java.util.concurrent.locks.LockSupport;
 
 public final class FiberPublisher<T> implements Flow.Publisher<T> {
 
@@ -38,18 +38,18 @@ public final class FiberPublisher<T> implements Flow.Publisher<T> {
 
         final Subscriber<? super T> downstream;
 
-        volatile RuntimeException stop;
+        final FlowMetrics metrics;
 
-        final ReentrantLock lock;
+        volatile RuntimeException stop;
 
-        final Condition condition;
+        /** The emitter thread parked in {@link #await(long)}, null if not waiting. */
+        volatile Thread waiter;
 
         long produced;
 
         FiberSubscription(Subscriber<? super T> downstream) {
             this.downstream = downstream;
-            this.lock = new ReentrantLock();
-            this.condition = lock.newCondition();
+            this.metrics = FlowMetrics.current();
         }
 
         @Override
@@ -63,6 +63,7 @@ public final class FiberPublisher<T> implements Flow.Publisher<T> {
                 downstream.onNext(t);
 
                 produced = p + 1;
+                metrics.emitted(FiberPublisher.class, null, 1L);
             } else {
                 throw s;
             }
@@ -71,49 +72,51 @@ public final class FiberPublisher<T> implements Flow.Publisher<T> {
         @Override
         public void request(long n) {
             if (n <= 0) {
-                stop = new IllegalArgumentException("3.9 violated: positive request amount required but it was " + n);
+                stop = Requests.badRequest(n);
                 n = 1; // this will resume a suspended continuation
             }
-            for (;;) {
-                var current = get();
-                if (current == Long.MAX_VALUE) {
-                    break;
-                }
-
-                var next = current + n;
-                if (next < 0L) {
-                    next = Long.MAX_VALUE;
-                }
-
-                if (compareAndSet(current, next)) {
-                    resume();
-                    break;
-                }
+            if (Requests.addCap(this, n) != Long.MAX_VALUE) {
+                resume();
             }
         }
 
         void await(long p) throws InterruptedException {
-            lock.lock();
+            // register first, then re-check the requested amount so a concurrent request() either
+            // sees the waiter or its increment is seen here
+            var m = metrics;
+            m.suspended(FiberPublisher.class, null);
+            var start = m.isEnabled() ? System.nanoTime() : 0L;
+            var event = new FlowEvents.GeneratorSuspend();
+            event.begin();
+            waiter = Thread.currentThread();
             try {
                 while (get() == p) {
-                    condition.await();
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
                 }
             } finally {
-                lock.unlock();
+                waiter = null;
+                if (m.isEnabled()) {
+                    m.parked(FiberPublisher.class, null, System.nanoTime() - start);
+                }
+                FlowEvents.suspended(event, FiberPublisher.class);
             }
         }
 
         void resume() {
-            lock.lock();
-            try {
-                condition.signalAll();
-            } finally {
-                lock.unlock();
+            var w = waiter;
+            if (w != null) {
+                metrics.resumed(FiberPublisher.class, null);
+                FlowEvents.resumed(FiberPublisher.class);
+                LockSupport.unpark(w);
             }
         }
 
         @Override
         public void cancel() {
+            metrics.cancelled(FiberPublisher.class, null);
             stop = STOP;
             request(1);
         }
@@ -0,0 +1,215 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.Flow.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Emits the latest upstream item, if any, once every period.
+ * <p>
+ * The upstream is consumed in an unbounded manner. If the downstream has not requested when a sample is taken,
+ * the sample is kept until it requests, a newer sample replacing it. When the upstream completes, the latest
+ * item not yet emitted is emitted before the completion. The period is tracked by the {@link TimingWheel} of
+ * the given {@link ExecutorPool} with one timer per subscription.
+ * @param <T> the element type
+ */
+public final class FiberSample<T> implements Flow.Publisher<T> {
+
+    final Flow.Publisher<T> source;
+
+    final ExecutorPool pool;
+
+    final long periodNanos;
+
+    public FiberSample(Flow.Publisher<T> source, ExecutorPool pool, long period, TimeUnit unit) {
+        if (period <= 0L) {
+            throw new IllegalArgumentException("period > 0 required but it was " + period);
+        }
+        this.source = source;
+        this.pool = pool;
+        this.periodNanos = unit.toNanos(period);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        source.subscribe(new FiberSampleSubscriber<>(subscriber, pool, periodNanos));
+    }
+
+    static final class FiberSampleSubscriber<T> extends AtomicInteger implements Subscriber<T>, Subscription, Runnable {
+
+        private static final long serialVersionUID = 4188563215839137408L;
+
+        final Subscriber<? super T> downstream;
+
+        final ExecutorPool pool;
+
+        final ExecutorWorker worker;
+
+        final FlowMetrics metrics;
+
+        final long periodNanos;
+
+        final TimingWheel.Timer timer;
+
+        /** The latest item since the last sample. */
+        final AtomicReference<T> latest;
+
+        /** The sample waiting for the downstream to request. */
+        final AtomicReference<T> sampled;
+
+        final AtomicLong requested;
+
+        Subscription upstream;
+
+        volatile boolean done;
+        Throwable error;
+
+        volatile boolean cancelled;
+
+        volatile Throwable badRequest;
+
+        long emitted;
+
+        FiberSampleSubscriber(Subscriber<? super T> downstream, ExecutorPool pool, long periodNanos) {
+            this.downstream = downstream;
+            this.pool = pool;
+            this.worker = pool.worker();
+            this.metrics = FlowMetrics.current();
+            this.periodNanos = periodNanos;
+            this.timer = TimingWheel.timer(pool, this, worker);
+            this.latest = new AtomicReference<>();
+            this.sampled = new AtomicReference<>();
+            this.requested = new AtomicLong();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.upstream = subscription;
+            downstream.onSubscribe(this);
+            timer.schedule(periodNanos);
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T item) {
+            latest.set(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        /**
+         * The period elapsed.
+         */
+        @Override
+        public void run() {
+            if (cancelled || done) {
+                return;
+            }
+            timer.schedule(periodNanos);
+            var v = latest.getAndSet(null);
+            if (v != null) {
+                sampled.set(v);
+                drain();
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                // signalled from the drain loop, serialized with the other signals
+                badRequest = Requests.badRequest(n);
+                drain();
+                return;
+            }
+            Requests.addCap(requested, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            metrics.cancelled(FiberSample.class, pool);
+            cancelled = true;
+            upstream.cancel();
+            drain();
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            var missed = 1;
+            var e = emitted;
+
+            for (;;) {
+                if (cancelled) {
+                    cleanup();
+                    return;
+                }
+
+                var br = badRequest;
+                if (br != null) {
+                    upstream.cancel();
+                    cleanup();
+                    downstream.onError(br);
+                    return;
+                }
+
+                var d = done;
+                if (d) {
+                    if (error != null) {
+                        cleanup();
+                        downstream.onError(error);
+                        return;
+                    }
+                    var v = latest.getAndSet(null);
+                    if (v != null) {
+                        sampled.set(v);
+                    }
+                }
+
+                if (e != requested.get()) {
+                    var v = sampled.getAndSet(null);
+                    if (v != null) {
+                        downstream.onNext(v);
+                        metrics.emitted(FiberSample.class, pool, 1L);
+                        e++;
+                        continue;
+                    }
+                }
+
+                if (d && sampled.get() == null) {
+                    cleanup();
+                    downstream.onComplete();
+                    return;
+                }
+
+                emitted = e;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        void cleanup() {
+            cancelled = true;
+            latest.lazySet(null);
+            sampled.lazySet(null);
+            timer.cancel();
+            worker.close();
+        }
+    }
+}
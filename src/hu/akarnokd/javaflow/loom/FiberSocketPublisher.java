@@ -0,0 +1,67 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Flow.Subscriber;
+
+/**
+ * Reads a {@link SocketChannel} in blocking mode on a fiber of the given {@link ExecutorPool}
+ * and emits the received bytes as read-only {@link ByteBuffer}s, suspending the reader fiber
+ * on backpressure the same way {@link FiberPublisher} does.
+ * <p>
+ * Each read goes into a pooled direct buffer which is reused for the next read, thus the
+ * emitted buffer is only valid until {@code onNext} returns. The sequence completes when the
+ * peer shuts down its output. The channel is not closed by this publisher; as the channel can
+ * be read only once, there should be only one subscriber at a time. A cancellation takes effect
+ * once the pending read returns; close the channel to abandon it immediately.
+ */
+public final class FiberSocketPublisher implements Flow.Publisher<ByteBuffer> {
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    final SocketChannel channel;
+
+    final ByteBufferPool buffers;
+
+    final Flow.Publisher<ByteBuffer> reads;
+
+    public FiberSocketPublisher(SocketChannel channel, ExecutorPool pool) {
+        this(channel, pool, DEFAULT_BUFFER_SIZE);
+    }
+
+    public FiberSocketPublisher(SocketChannel channel, ExecutorPool pool, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize > 0 required but it was " + bufferSize);
+        }
+        this.channel = channel;
+        this.buffers = new ByteBufferPool(bufferSize, 1);
+        this.reads = new FiberSubscribeOnPublisher<>(new FiberPublisher<>(this::generate), pool);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        reads.subscribe(subscriber);
+    }
+
+    void generate(Emitter<ByteBuffer> emitter) throws Throwable {
+        channel.configureBlocking(true);
+        var buffer = buffers.acquire();
+        try {
+            var view = buffer.asReadOnlyBuffer();
+            for (;;) {
+                buffer.clear();
+                var n = channel.read(buffer);
+                if (n < 0) {
+                    break;
+                }
+                if (n != 0) {
+                    view.limit(n).position(0);
+                    emitter.emit(view);
+                }
+            }
+        } finally {
+            buffers.release(buffer);
+        }
+    }
+}
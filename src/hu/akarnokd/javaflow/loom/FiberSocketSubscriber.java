@@ -0,0 +1,203 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes the received {@link ByteBuffer}s into a {@link SocketChannel} in blocking mode from a fiber of
+ * the given {@link ExecutorPool}, batching the buffers queued up meanwhile into one gathering
+ * {@link SocketChannel#write(ByteBuffer[], int, int)} call.
+ * <p>
+ * Up to {@code prefetch} buffers are requested upfront and each batch written is requested again.
+ * The buffers are written after {@code onNext} returns, thus sources reusing their buffers, such
+ * as {@link FiberSocketPublisher}, have to be copied first. The channel is not closed by this
+ * subscriber; {@link #completion()} signals when all bytes have been written or the writing failed.
+ */
+public final class FiberSocketSubscriber implements Subscriber<ByteBuffer> {
+
+    final SocketChannel channel;
+
+    final ExecutorPool pool;
+
+    final int prefetch;
+
+    final SpscArrayQueue<ByteBuffer> queue;
+
+    final CompletableFuture<Void> completion;
+
+    final FlowMetrics metrics;
+
+    volatile Subscription upstream;
+
+    volatile boolean done;
+    Throwable error;
+
+    volatile boolean cancelled;
+
+    /** The writer fiber parked in {@link #drain()}, null if not waiting. */
+    volatile Thread waiter;
+
+    public FiberSocketSubscriber(SocketChannel channel, ExecutorPool pool) {
+        this(channel, pool, 32);
+    }
+
+    public FiberSocketSubscriber(SocketChannel channel, ExecutorPool pool, int prefetch) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch > 0 required but it was " + prefetch);
+        }
+        this.channel = channel;
+        this.pool = pool;
+        this.prefetch = prefetch;
+        this.queue = new SpscArrayQueue<>(prefetch);
+        this.completion = new CompletableFuture<>();
+        this.metrics = FlowMetrics.current();
+    }
+
+    /**
+     * Returns the future completed when the upstream completed and all its bytes have been written,
+     * or completed exceptionally when the upstream or a write failed. Cancelling it cancels the upstream.
+     * @return the future
+     */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        var worker = pool.worker();
+        completion.whenComplete((v, e) -> {
+            if (!done) {
+                cancel();
+            }
+        });
+        worker.startFiber(() -> {
+            try {
+                drain();
+            } finally {
+                worker.close();
+            }
+        });
+        subscription.request(prefetch);
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+        if (!queue.offer(item)) {
+            upstream.cancel();
+            onError(new IllegalStateException("Queue full?! More items arrived than requested"));
+            return;
+        }
+        writerReady();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        done = true;
+        writerReady();
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+        writerReady();
+    }
+
+    void cancel() {
+        if (!cancelled) {
+            metrics.cancelled(FiberSocketSubscriber.class, pool);
+            cancelled = true;
+            upstream.cancel();
+            writerReady();
+        }
+    }
+
+    void writerReady() {
+        var w = waiter;
+        if (w != null) {
+            metrics.resumed(FiberSocketSubscriber.class, pool);
+            LockSupport.unpark(w);
+        }
+    }
+
+    void drain() {
+        var batch = new ByteBuffer[prefetch];
+        try {
+            channel.configureBlocking(true);
+            for (;;) {
+                if (cancelled) {
+                    queue.clear();
+                    return;
+                }
+                var d = done;
+                var n = 0;
+                ByteBuffer b;
+                while (n < batch.length && (b = queue.poll()) != null) {
+                    batch[n++] = b;
+                }
+                if (n != 0) {
+                    write(batch, n);
+                    Arrays.fill(batch, 0, n, null);
+                    metrics.emitted(FiberSocketSubscriber.class, pool, n);
+                    upstream.request(n);
+                    continue;
+                }
+                if (d) {
+                    var ex = error;
+                    if (ex != null) {
+                        completion.completeExceptionally(ex);
+                    } else {
+                        completion.complete(null);
+                    }
+                    return;
+                }
+
+                waiter = Thread.currentThread();
+                try {
+                    if (queue.isEmpty() && !done && !cancelled) {
+                        park();
+                    }
+                } finally {
+                    waiter = null;
+                }
+            }
+        } catch (Throwable ex) {
+            cancel();
+            queue.clear();
+            completion.completeExceptionally(ex);
+        }
+    }
+
+    void write(ByteBuffer[] batch, int n) throws IOException {
+        var offset = 0;
+        while (offset < n) {
+            channel.write(batch, offset, n - offset);
+            while (offset < n && !batch[offset].hasRemaining()) {
+                offset++;
+            }
+        }
+    }
+
+    void park() throws InterruptedException {
+        var m = metrics;
+        m.suspended(FiberSocketSubscriber.class, pool);
+        var start = m.isEnabled() ? System.nanoTime() : 0L;
+        LockSupport.park(this);
+        if (m.isEnabled()) {
+            m.parked(FiberSocketSubscriber.class, pool, System.nanoTime() - start);
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.Flow.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Subscribes to the upstream source from a fiber running on an {@link ExecutorWorker}
+ * taken from the {@link ExecutorPool} for each subscriber, so that a blocking upstream,
+ * such as {@link FiberPublisher}, doesn't block the subscribing thread.
+ * <p>
+ * The worker is closed when the sequence terminates or gets cancelled.
+ * @param <T> the element type
+ */
+public final class FiberSubscribeOnPublisher<T> implements Flow.Publisher<T> {
+
+    final Flow.Publisher<T> source;
+
+    final ExecutorPool pool;
+
+    public FiberSubscribeOnPublisher(Flow.Publisher<T> source, ExecutorPool pool) {
+        this.source = source;
+        this.pool = pool;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        var worker = pool.worker();
+        var parent = new SubscribeOnSubscriber<T>(subscriber, worker);
+        subscriber.onSubscribe(parent);
+        worker.startFiber(() -> source.subscribe(parent));
+    }
+
+    static final class SubscribeOnSubscriber<T> extends AtomicReference<Subscription> implements Subscriber<T>, Subscription {
+
+        private static final long serialVersionUID = 2415468291475837946L;
+
+        final Subscriber<? super T> downstream;
+
+        final ExecutorWorker worker;
+
+        final AtomicLong deferredRequested;
+
+        SubscribeOnSubscriber(Subscriber<? super T> downstream, ExecutorWorker worker) {
+            this.downstream = downstream;
+            this.worker = worker;
+            this.deferredRequested = new AtomicLong();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            if (compareAndSet(null, subscription)) {
+                var r = deferredRequested.getAndSet(0L);
+                if (r != 0L) {
+                    subscription.request(r);
+                }
+            } else {
+                subscription.cancel();
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            downstream.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            worker.close();
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            worker.close();
+            downstream.onComplete();
+        }
+
+        @Override
+        public void request(long n) {
+            var s = get();
+            if (s != null) {
+                s.request(n);
+                return;
+            }
+            // accumulate until the upstream subscription arrives on the fiber
+            if (n <= 0L) {
+                // let the upstream report the rule 3.9 violation
+                deferredRequested.set(n);
+            } else {
+                for (;;) {
+                    var current = deferredRequested.get();
+                    if (current < 0L) {
+                        break;
+                    }
+                    var next = current + n;
+                    if (next < 0L) {
+                        next = Long.MAX_VALUE;
+                    }
+                    if (deferredRequested.compareAndSet(current, next)) {
+                        break;
+                    }
+                }
+            }
+            s = get();
+            if (s != null) {
+                var r = deferredRequested.getAndSet(0L);
+                if (r != 0L) {
+                    s.request(r);
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            var s = getAndSet(CancelledSubscription.INSTANCE);
+            if (s != CancelledSubscription.INSTANCE) {
+                if (s != null) {
+                    s.cancel();
+                }
+                worker.close();
+            }
+        }
+    }
+
+    enum CancelledSubscription implements Subscription {
+        INSTANCE;
+
+        @Override
+        public void request(long n) {
+            // deliberately ignored
+        }
+
+        @Override
+        public void cancel() {
+            // deliberately ignored
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.Flow.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Emits an upstream item right away, then ignores the upstream for the given period, except for keeping
+ * the latest item, which is emitted at the end of the period and starts a new period.
+ * <p>
+ * The upstream is consumed in an unbounded manner. If the downstream has not requested, the latest item is
+ * kept until it does. When the upstream completes, the latest item not yet emitted is emitted without waiting
+ * for the period to end. The periods are tracked by the {@link TimingWheel} of the given {@link ExecutorPool}
+ * with one timer per subscription.
+ * @param <T> the element type
+ */
+public final class FiberThrottleLatest<T> implements Flow.Publisher<T> {
+
+    final Flow.Publisher<T> source;
+
+    final ExecutorPool pool;
+
+    final long periodNanos;
+
+    public FiberThrottleLatest(Flow.Publisher<T> source, ExecutorPool pool, long period, TimeUnit unit) {
+        if (period <= 0L) {
+            throw new IllegalArgumentException("period > 0 required but it was " + period);
+        }
+        this.source = source;
+        this.pool = pool;
+        this.periodNanos = unit.toNanos(period);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        source.subscribe(new FiberThrottleLatestSubscriber<>(subscriber, pool, periodNanos));
+    }
+
+    static final class FiberThrottleLatestSubscriber<T> extends AtomicInteger implements Subscriber<T>, Subscription, Runnable {
+
+        private static final long serialVersionUID = -3580154452216462519L;
+
+        final Subscriber<? super T> downstream;
+
+        final ExecutorPool pool;
+
+        final ExecutorWorker worker;
+
+        final FlowMetrics metrics;
+
+        final long periodNanos;
+
+        final TimingWheel.Timer timer;
+
+        final AtomicReference<T> latest;
+
+        final AtomicLong requested;
+
+        Subscription upstream;
+
+        volatile boolean done;
+        Throwable error;
+
+        volatile boolean cancelled;
+
+        volatile Throwable badRequest;
+
+        /** Set by the timer at the end of the period, cleared by the drain loop. */
+        volatile boolean periodEnded;
+
+        /** Accessed only from the drain loop. */
+        boolean inPeriod;
+
+        long emitted;
+
+        FiberThrottleLatestSubscriber(Subscriber<? super T> downstream, ExecutorPool pool, long periodNanos) {
+            this.downstream = downstream;
+            this.pool = pool;
+            this.worker = pool.worker();
+            this.metrics = FlowMetrics.current();
+            this.periodNanos = periodNanos;
+            this.timer = TimingWheel.timer(pool, this, worker);
+            this.latest = new AtomicReference<>();
+            this.requested = new AtomicLong();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.upstream = subscription;
+            downstream.onSubscribe(this);
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T item) {
+            latest.set(item);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        /**
+         * The period ended.
+         */
+        @Override
+        public void run() {
+            periodEnded = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                // signalled from the drain loop, serialized with the other signals
+                badRequest = Requests.badRequest(n);
+                drain();
+                return;
+            }
+            Requests.addCap(requested, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            metrics.cancelled(FiberThrottleLatest.class, pool);
+            cancelled = true;
+            upstream.cancel();
+            drain();
+        }
+
+        void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            var missed = 1;
+            var e = emitted;
+
+            for (;;) {
+                if (cancelled) {
+                    cleanup();
+                    return;
+                }
+
+                var br = badRequest;
+                if (br != null) {
+                    upstream.cancel();
+                    cleanup();
+                    downstream.onError(br);
+                    return;
+                }
+
+                var d = done;
+                if (d && error != null) {
+                    cleanup();
+                    downstream.onError(error);
+                    return;
+                }
+
+                if (periodEnded) {
+                    periodEnded = false;
+                    inPeriod = false;
+                }
+
+                if ((!inPeriod || d) && e != requested.get()) {
+                    var v = latest.getAndSet(null);
+                    if (v != null) {
+                        downstream.onNext(v);
+                        metrics.emitted(FiberThrottleLatest.class, pool, 1L);
+                        e++;
+                        if (!d) {
+                            inPeriod = true;
+                            timer.schedule(periodNanos);
+                        }
+                        continue;
+                    }
+                }
+
+                if (d && latest.get() == null) {
+                    cleanup();
+                    downstream.onComplete();
+                    return;
+                }
+
+                emitted = e;
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        void cleanup() {
+            cancelled = true;
+            latest.lazySet(null);
+            timer.cancel();
+            worker.close();
+        }
+    }
+}
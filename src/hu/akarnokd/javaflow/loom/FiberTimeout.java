@@ -0,0 +1,151 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.Flow.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Signals a {@link TimeoutException} and cancels the upstream if the first item or the next item
+ * doesn't arrive within the given timeout after the subscription or after the previous item was emitted.
+ * <p>
+ * The timeouts are tracked by the {@link TimingWheel} of the given {@link ExecutorPool} with one timer per
+ * subscription. The items don't touch the timer: they only record their time, and an expiring timer
+ * reschedules itself for the remaining time if an item arrived meanwhile.
+ * @param <T> the element type
+ */
+public final class FiberTimeout<T> implements Flow.Publisher<T> {
+
+    final Flow.Publisher<T> source;
+
+    final ExecutorPool pool;
+
+    final long timeoutNanos;
+
+    public FiberTimeout(Flow.Publisher<T> source, ExecutorPool pool, long timeout, TimeUnit unit) {
+        if (timeout <= 0L) {
+            throw new IllegalArgumentException("timeout > 0 required but it was " + timeout);
+        }
+        this.source = source;
+        this.pool = pool;
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        source.subscribe(new FiberTimeoutSubscriber<>(subscriber, pool, timeoutNanos));
+    }
+
+    /**
+     * The index is even between items and odd while an item is being emitted, so the timer doesn't
+     * signal an error concurrently with {@code onNext}; it is {@code Long.MAX_VALUE} once terminated.
+     * @param <T> the element type
+     */
+    static final class FiberTimeoutSubscriber<T> extends AtomicLong implements Subscriber<T>, Subscription, Runnable {
+
+        private static final long serialVersionUID = -5293711930436264913L;
+
+        final Subscriber<? super T> downstream;
+
+        final ExecutorPool pool;
+
+        final ExecutorWorker worker;
+
+        final FlowMetrics metrics;
+
+        final long timeoutNanos;
+
+        final TimingWheel.Timer timer;
+
+        Subscription upstream;
+
+        /** When the last item was emitted, written before the index turns even again. */
+        volatile long lastTime;
+
+        FiberTimeoutSubscriber(Subscriber<? super T> downstream, ExecutorPool pool, long timeoutNanos) {
+            this.downstream = downstream;
+            this.pool = pool;
+            this.worker = pool.worker();
+            this.metrics = FlowMetrics.current();
+            this.timeoutNanos = timeoutNanos;
+            this.timer = TimingWheel.timer(pool, this, worker);
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.upstream = subscription;
+            lastTime = System.nanoTime();
+            timer.schedule(timeoutNanos);
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(T item) {
+            var idx = get();
+            if (idx == Long.MAX_VALUE || !compareAndSet(idx, idx + 1)) {
+                return;
+            }
+            downstream.onNext(item);
+            metrics.emitted(FiberTimeout.class, pool, 1L);
+            lastTime = System.nanoTime();
+            // a concurrent cancel() may have terminated it meanwhile
+            compareAndSet(idx + 1, idx + 2);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            if (getAndSet(Long.MAX_VALUE) != Long.MAX_VALUE) {
+                terminate();
+                downstream.onError(throwable);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (getAndSet(Long.MAX_VALUE) != Long.MAX_VALUE) {
+                terminate();
+                downstream.onComplete();
+            }
+        }
+
+        /**
+         * The timer expired.
+         */
+        @Override
+        public void run() {
+            var idx = get();
+            if (idx == Long.MAX_VALUE) {
+                return;
+            }
+            var remaining = timeoutNanos - (System.nanoTime() - lastTime);
+            if ((idx & 1L) != 0L || remaining > 0L) {
+                timer.schedule((idx & 1L) != 0L ? timeoutNanos : remaining);
+                return;
+            }
+            if (compareAndSet(idx, Long.MAX_VALUE)) {
+                upstream.cancel();
+                terminate();
+                downstream.onError(new TimeoutException("No item within " + timeoutNanos + " nanoseconds"));
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            upstream.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            if (getAndSet(Long.MAX_VALUE) != Long.MAX_VALUE) {
+                metrics.cancelled(FiberTimeout.class, pool);
+                upstream.cancel();
+                terminate();
+            }
+        }
+
+        void terminate() {
+            timer.cancel();
+            worker.close();
+        }
+    }
+}
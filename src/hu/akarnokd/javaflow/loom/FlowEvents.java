@@ -0,0 +1,118 @@
+package hu.akarnokd.javaflow.loom;
+
+import jdk.jfr.*;
+
+/**
+ * The JDK Flight Recorder events of this package.
+ * <p>
+ * The events are created, begun and committed inline; while they are disabled, the JIT
+ * eliminates the event allocations and {@link Event#shouldCommit()} returns false,
+ * so the recording costs next to nothing. The suspension and wait events have a
+ * threshold so only the long waits are recorded by default.
+ */
+final class FlowEvents {
+
+    private FlowEvents() {
+        throw new IllegalStateException("No instances!");
+    }
+
+    static final String CATEGORY = "Loom Interop";
+
+    @Name("hu.akarnokd.javaflow.loom.GeneratorSuspend")
+    @Label("Generator Suspend")
+    @Description("A generator waiting for the downstream to request more items")
+    @Category(CATEGORY)
+    @StackTrace(true)
+    @Threshold("10 ms")
+    static final class GeneratorSuspend extends Event {
+
+        @Label("Source")
+        Class<?> source;
+    }
+
+    @Name("hu.akarnokd.javaflow.loom.GeneratorResume")
+    @Label("Generator Resume")
+    @Description("A request resuming a suspended generator")
+    @Category(CATEGORY)
+    @StackTrace(true)
+    @Enabled(false)
+    static final class GeneratorResume extends Event {
+
+        @Label("Source")
+        Class<?> source;
+    }
+
+    @Name("hu.akarnokd.javaflow.loom.SelectorWait")
+    @Label("Selector Wait")
+    @Description("A BlockingQueueSelector consumer waiting for any of the queues to have an item")
+    @Category(CATEGORY)
+    @StackTrace(true)
+    @Threshold("10 ms")
+    static final class SelectorWait extends Event {
+
+        @Label("Queues")
+        int queues;
+
+        @Label("Timed")
+        boolean timed;
+
+        @Label("Timed Out")
+        boolean timedOut;
+    }
+
+    @Name("hu.akarnokd.javaflow.loom.WorkerAcquire")
+    @Label("Worker Acquire")
+    @Description("Taking a worker from an ExecutorPool")
+    @Category(CATEGORY)
+    @StackTrace(true)
+    @Threshold("1 ms")
+    static final class WorkerAcquire extends Event {
+
+        @Label("Pool")
+        Class<?> pool;
+    }
+
+    @Name("hu.akarnokd.javaflow.loom.WorkerRelease")
+    @Label("Worker Release")
+    @Description("Closing a worker taken from an ExecutorPool")
+    @Category(CATEGORY)
+    @StackTrace(true)
+    @Enabled(false)
+    static final class WorkerRelease extends Event {
+
+        @Label("Pool")
+        Class<?> pool;
+    }
+
+    static void suspended(GeneratorSuspend event, Class<?> source) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.commit();
+        }
+    }
+
+    static void resumed(Class<?> source) {
+        var event = new GeneratorResume();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.commit();
+        }
+    }
+
+    static void acquired(WorkerAcquire event, Class<?> pool) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.pool = pool;
+            event.commit();
+        }
+    }
+
+    static void released(Class<?> pool) {
+        var event = new WorkerRelease();
+        if (event.shouldCommit()) {
+            event.pool = pool;
+            event.commit();
+        }
+    }
+}
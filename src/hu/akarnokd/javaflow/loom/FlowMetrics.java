@@ -0,0 +1,83 @@
+package hu.akarnokd.javaflow.loom;
+
+/**
+ * Receives the emission, suspension, resumption, cancellation and parking events of the
+ * publishers, consumers and operators in this package.
+ * <p>
+ * The events are keyed by the class of the reporting component and, for the operators running
+ * on an {@link ExecutorPool}, by that pool (null otherwise). The components capture the
+ * {@link #current()} instance when they are subscribed to, so {@link #install(FlowMetrics)}
+ * should be called before the flows to be measured are started.
+ * <p>
+ * The default {@link #noop()} instance ignores everything and reports itself as disabled,
+ * in which case park durations are not timed at all.
+ */
+public interface FlowMetrics {
+
+    /**
+     * Called when items were emitted to a subscriber.
+     * @param source the class of the reporting component
+     * @param pool the pool the component runs on, null if not applicable
+     * @param count the number of items emitted
+     */
+    void emitted(Class<?> source, ExecutorPool pool, long count);
+
+    /**
+     * Called when a producer or consumer has to wait for its counterpart.
+     * @param source the class of the reporting component
+     * @param pool the pool the component runs on, null if not applicable
+     */
+    void suspended(Class<?> source, ExecutorPool pool);
+
+    /**
+     * Called when a waiting producer or consumer gets signalled to continue.
+     * @param source the class of the reporting component
+     * @param pool the pool the component runs on, null if not applicable
+     */
+    void resumed(Class<?> source, ExecutorPool pool);
+
+    /**
+     * Called when a flow was cancelled by its consumer.
+     * @param source the class of the reporting component
+     * @param pool the pool the component runs on, null if not applicable
+     */
+    void cancelled(Class<?> source, ExecutorPool pool);
+
+    /**
+     * Called after a suspended producer or consumer continued, only if {@link #isEnabled()}.
+     * @param source the class of the reporting component
+     * @param pool the pool the component runs on, null if not applicable
+     * @param nanos the time spent suspended in nanoseconds
+     */
+    void parked(Class<?> source, ExecutorPool pool, long nanos);
+
+    /**
+     * Returns true if the park durations should be measured.
+     * @return true if this instance records anything
+     */
+    boolean isEnabled();
+
+    /**
+     * Returns the instance that ignores all events.
+     * @return the no-op instance
+     */
+    static FlowMetrics noop() {
+        return NoopFlowMetrics.INSTANCE;
+    }
+
+    /**
+     * Returns the currently installed instance, {@link #noop()} by default.
+     * @return the current instance
+     */
+    static FlowMetrics current() {
+        return InstalledFlowMetrics.current;
+    }
+
+    /**
+     * Installs the instance to be used by the components subscribed to from now on.
+     * @param metrics the instance to install, null restores the no-op instance
+     */
+    static void install(FlowMetrics metrics) {
+        InstalledFlowMetrics.current = metrics != null ? metrics : NoopFlowMetrics.INSTANCE;
+    }
+}
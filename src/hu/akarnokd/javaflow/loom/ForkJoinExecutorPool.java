@@ -4,6 +4,8 @@ import java.util.concurrent.*;
 
 public final class ForkJoinExecutorPool implements ExecutorPool, AutoCloseable {
 
+    static final ThreadFactory FIBERS = Thread.builder().virtual(ForkJoinPool.commonPool()).factory();
+
     @Override
     public ExecutorWorker worker() {
         return new SingleExecutorWorker(ForkJoinPool.commonPool());
@@ -27,6 +29,11 @@ public final class ForkJoinExecutorPool implements ExecutorPool, AutoCloseable {
             service.execute(command);
         }
 
+        @Override
+        public void startFiber(Runnable task) {
+            FIBERS.newThread(task).start();
+        }
+
         @Override
         public void close() {
             // no op
@@ -0,0 +1,22 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.Flow;
+
+/**
+ * A publisher whose items can be pulled directly in the consumer's context,
+ * bypassing the {@link Flow.Subscription} machinery.
+ * <p>
+ * Consumers such as {@link FiberConsumer} check for this interface when they would
+ * otherwise iterate the source on the same thread anyway. Sources that have to run
+ * on a specific thread or worker (i.e., {@link FiberPublisher}) shouldn't implement it.
+ * @param <T> the element type
+ */
+interface FusablePublisher<T> extends Flow.Publisher<T> {
+
+    /**
+     * Returns an iterator that produces the items on demand in the caller's context,
+     * in each {@link CloseableIterator#hasNext()} call.
+     * @return the new iterator, closing it cancels the generation
+     */
+    CloseableIterator<T> fusedIterator();
+}
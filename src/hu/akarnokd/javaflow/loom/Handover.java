@@ -1,14 +1,176 @@
 package hu.akarnokd.javaflow.loom;
 
+import java.util.Objects;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-slot rendezvous between one producer and one consumer.
+ * <p>
+ * Both sides wait by spinning briefly, then yielding, then parking, so that
+ * fast counterparts don't pay the cost of unmounting/remounting a fiber.
+ * @param <T> the element type, nulls not allowed
+ */
 public class Handover<T> {
 
+    /** Spinning is pointless on a single CPU as the counterpart can't make progress meanwhile. */
+    static final int DEFAULT_SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 128 : 0;
+
+    static final int DEFAULT_YIELDS = 8;
+
+    final int spins;
+
+    final int yields;
+
+    final FlowMetrics metrics;
+
     volatile T value;
 
-    public void emit(T item) {
+    /** The producer parked in {@link #emit(Object)}, null if not waiting. */
+    volatile Thread producerWaiter;
+
+    /** The consumer parked in {@link #get()}, null if not waiting. */
+    volatile Thread consumerWaiter;
+
+    public Handover() {
+        this(DEFAULT_SPINS, DEFAULT_YIELDS);
+    }
+
+    /**
+     * Constructs a Handover with the given waiting strategy.
+     * @param spins the number of busy-spin rounds before yielding, non-negative
+     * @param yields the number of {@link Thread#yield()} rounds before parking, non-negative
+     */
+    public Handover(int spins, int yields) {
+        if (spins < 0) {
+            throw new IllegalArgumentException("spins >= 0 required but it was " + spins);
+        }
+        if (yields < 0) {
+            throw new IllegalArgumentException("yields >= 0 required but it was " + yields);
+        }
+        this.spins = spins;
+        this.yields = yields;
+        this.metrics = FlowMetrics.current();
+    }
+
+    /**
+     * Waits for the slot to become empty, then places the item into it.
+     * Should be called from one producer context at a time.
+     * @param item the item to hand over, not null
+     * @throws InterruptedException if the producer was interrupted while waiting
+     */
+    public void emit(T item) throws InterruptedException {
+        Objects.requireNonNull(item, "item is null");
+        if (value != null) {
+            awaitEmpty();
+        }
+        value = item;
+        var w = consumerWaiter;
+        if (w != null) {
+            metrics.resumed(Handover.class, null);
+            LockSupport.unpark(w);
+        }
+    }
+
+    /**
+     * Waits for an item to become available and takes it out of the slot.
+     * Should be called from one consumer context at a time.
+     * @return the item handed over
+     * @throws InterruptedException if the consumer was interrupted while waiting
+     */
+    public T get() throws InterruptedException {
+        var v = value;
+        if (v == null) {
+            v = awaitValue();
+        }
+        take();
+        return v;
+    }
+
+    /**
+     * Takes the current item out of the slot without waiting.
+     * Should be called from the consumer context.
+     * @return the item handed over or null if the slot is empty
+     */
+    public T poll() {
+        var v = value;
+        if (v != null) {
+            take();
+        }
+        return v;
+    }
+
+    void take() {
+        value = null;
+        var w = producerWaiter;
+        if (w != null) {
+            metrics.resumed(Handover.class, null);
+            LockSupport.unpark(w);
+        }
+    }
 
+    T awaitValue() throws InterruptedException {
+        T v;
+        for (int i = 0; i < spins; i++) {
+            Thread.onSpinWait();
+            if ((v = value) != null) {
+                return v;
+            }
+        }
+        for (int i = 0; i < yields; i++) {
+            Thread.yield();
+            if ((v = value) != null) {
+                return v;
+            }
+        }
+        var m = metrics;
+        m.suspended(Handover.class, null);
+        var start = m.isEnabled() ? System.nanoTime() : 0L;
+        consumerWaiter = Thread.currentThread();
+        try {
+            while ((v = value) == null) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            consumerWaiter = null;
+            if (m.isEnabled()) {
+                m.parked(Handover.class, null, System.nanoTime() - start);
+            }
+        }
+        return v;
     }
 
-    public T get() {
-        return null;
+    void awaitEmpty() throws InterruptedException {
+        for (int i = 0; i < spins; i++) {
+            Thread.onSpinWait();
+            if (value == null) {
+                return;
+            }
+        }
+        for (int i = 0; i < yields; i++) {
+            Thread.yield();
+            if (value == null) {
+                return;
+            }
+        }
+        var m = metrics;
+        m.suspended(Handover.class, null);
+        var start = m.isEnabled() ? System.nanoTime() : 0L;
+        producerWaiter = Thread.currentThread();
+        try {
+            while (value != null) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            producerWaiter = null;
+            if (m.isEnabled()) {
+                m.parked(Handover.class, null, System.nanoTime() - start);
+            }
+        }
     }
 }
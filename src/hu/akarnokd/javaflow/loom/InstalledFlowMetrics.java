@@ -0,0 +1,13 @@
+package hu.akarnokd.javaflow.loom;
+
+/**
+ * Holds the {@link FlowMetrics} instance installed via {@link FlowMetrics#install(FlowMetrics)}.
+ */
+final class InstalledFlowMetrics {
+
+    private InstalledFlowMetrics() {
+        throw new IllegalStateException("No instances!");
+    }
+
+    static volatile FlowMetrics current = NoopFlowMetrics.INSTANCE;
+}
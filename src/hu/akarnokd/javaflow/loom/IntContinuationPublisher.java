@@ -0,0 +1,101 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.Arrays;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.function.*;
+
+/**
+ * Runs an {@code int} generator via a {@link ContinuationPublisher} and emits the generated
+ * {@code int}s in {@code int[]} chunks of up to {@code chunkSize} items, so the generator
+ * doesn't box or yield per item.
+ * <p>
+ * A chunk is emitted when it fills up or when the generator returns, thus a slow generator may
+ * want a smaller chunk size. Use {@link IntFiberConsumer} to iterate over the items.
+ */
+public final class IntContinuationPublisher implements FusablePublisher<int[]> {
+
+    final ContinuationPublisher<int[]> chunks;
+
+    public IntContinuationPublisher(Consumer<IntConsumer> continuableGenerator) {
+        this(continuableGenerator, IntFiberPublisher.DEFAULT_CHUNK_SIZE);
+    }
+
+    public IntContinuationPublisher(Consumer<IntConsumer> continuableGenerator, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize > 0 required but it was " + chunkSize);
+        }
+        this.chunks = new ContinuationPublisher<>(emitter -> {
+            var chunker = new ChunkConsumer(emitter, chunkSize);
+            try {
+                continuableGenerator.accept(chunker);
+            } catch (Throwable ex) {
+                // deliver the items generated before the failure
+                chunker.flushQuietly();
+                throw ex;
+            }
+            chunker.flush();
+        });
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super int[]> subscriber) {
+        chunks.subscribe(subscriber);
+    }
+
+    @Override
+    public CloseableIterator<int[]> fusedIterator() {
+        return chunks.fusedIterator();
+    }
+
+    static final class ChunkConsumer implements IntConsumer {
+
+        final Consumer<? super int[]> downstream;
+
+        final int chunkSize;
+
+        int[] buffer;
+
+        int size;
+
+        ChunkConsumer(Consumer<? super int[]> downstream, int chunkSize) {
+            this.downstream = downstream;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public void accept(int item) {
+            var b = buffer;
+            if (b == null) {
+                b = new int[chunkSize];
+                buffer = b;
+            }
+            var s = size;
+            b[s] = item;
+            if (++s == chunkSize) {
+                buffer = null;
+                size = 0;
+                downstream.accept(b);
+            } else {
+                size = s;
+            }
+        }
+
+        void flushQuietly() {
+            try {
+                flush();
+            } catch (Throwable ignored) {
+                // cancelled meanwhile, nobody is there to receive the chunk
+            }
+        }
+
+        void flush() {
+            var s = size;
+            if (s != 0) {
+                var b = buffer;
+                buffer = null;
+                size = 0;
+                downstream.accept(Arrays.copyOf(b, s));
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package hu.akarnokd.javaflow.loom;
+
+/**
+ * The primitive {@code int} specialization of {@link Emitter}.
+ */
+public interface IntEmitter {
+
+    void emit(int item) throws Throwable;
+}
@@ -0,0 +1,74 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.Flow.Publisher;
+
+/**
+ * Iterates over the items of a {@code int[]} chunk publisher, such as {@link IntFiberPublisher}
+ * or {@link IntContinuationPublisher}, without boxing them. The chunks themselves
+ * are handed over via a {@link FiberConsumer}.
+ */
+public final class IntFiberConsumer {
+
+    final FiberConsumer<int[]> chunks;
+
+    public IntFiberConsumer(Publisher<? extends int[]> source) {
+        this.chunks = new FiberConsumer<>(source);
+    }
+
+    public CloseableIntIterator iterator() {
+        return new ChunkIterator(chunks.iterator());
+    }
+
+    /**
+     * Returns an iterator that keeps up to {@code prefetch} chunks ready.
+     * @param prefetch the number of chunks to request upfront, positive
+     * @return the new iterator
+     * @see FiberConsumer#iterator(int)
+     */
+    public CloseableIntIterator iterator(int prefetch) {
+        return new ChunkIterator(chunks.iterator(prefetch));
+    }
+
+    static final class ChunkIterator implements CloseableIntIterator {
+
+        final CloseableIterator<int[]> chunks;
+
+        int[] current;
+
+        int index;
+
+        ChunkIterator(CloseableIterator<int[]> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public boolean hasNext() {
+            var c = current;
+            while (c == null || index == c.length) {
+                if (!chunks.hasNext()) {
+                    current = null;
+                    return false;
+                }
+                c = chunks.next();
+                current = c;
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int nextInt() {
+            if (hasNext()) {
+                return current[index++];
+            }
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public void close() throws Exception {
+            current = null;
+            chunks.close();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package hu.akarnokd.javaflow.loom;
+
+/**
+ * The primitive {@code int} specialization of {@link FiberGenerator}.
+ */
+@FunctionalInterface
+public interface IntFiberGenerator {
+
+    void generate(IntEmitter emitter) throws Throwable;
+}
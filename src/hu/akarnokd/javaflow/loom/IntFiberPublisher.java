@@ -0,0 +1,98 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Flow.Subscriber;
+
+/**
+ * Runs a {@link IntFiberGenerator} via a {@link FiberPublisher} and emits the generated
+ * {@code int}s in {@code int[]} chunks of up to {@code chunkSize} items, so the generator
+ * doesn't box or suspend per item.
+ * <p>
+ * A chunk is emitted when it fills up or when the generator returns, thus a slow generator may
+ * want a smaller chunk size. Use {@link IntFiberConsumer} to iterate over the items.
+ */
+public final class IntFiberPublisher implements Flow.Publisher<int[]> {
+
+    static final int DEFAULT_CHUNK_SIZE = 128;
+
+    final FiberPublisher<int[]> chunks;
+
+    public IntFiberPublisher(IntFiberGenerator generator) {
+        this(generator, DEFAULT_CHUNK_SIZE);
+    }
+
+    public IntFiberPublisher(IntFiberGenerator generator, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize > 0 required but it was " + chunkSize);
+        }
+        this.chunks = new FiberPublisher<>(emitter -> {
+            var chunker = new ChunkEmitter(emitter, chunkSize);
+            try {
+                generator.generate(chunker);
+            } catch (Throwable ex) {
+                // deliver the items generated before the failure
+                chunker.flushQuietly();
+                throw ex;
+            }
+            chunker.flush();
+        });
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super int[]> subscriber) {
+        chunks.subscribe(subscriber);
+    }
+
+    static final class ChunkEmitter implements IntEmitter {
+
+        final Emitter<int[]> downstream;
+
+        final int chunkSize;
+
+        int[] buffer;
+
+        int size;
+
+        ChunkEmitter(Emitter<int[]> downstream, int chunkSize) {
+            this.downstream = downstream;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public void emit(int item) throws Throwable {
+            var b = buffer;
+            if (b == null) {
+                b = new int[chunkSize];
+                buffer = b;
+            }
+            var s = size;
+            b[s] = item;
+            if (++s == chunkSize) {
+                buffer = null;
+                size = 0;
+                downstream.emit(b);
+            } else {
+                size = s;
+            }
+        }
+
+        void flushQuietly() {
+            try {
+                flush();
+            } catch (Throwable ignored) {
+                // cancelled meanwhile, nobody is there to receive the chunk
+            }
+        }
+
+        void flush() throws Throwable {
+            var s = size;
+            if (s != 0) {
+                var b = buffer;
+                buffer = null;
+                size = 0;
+                downstream.emit(Arrays.copyOf(b, s));
+            }
+        }
+    }
+}
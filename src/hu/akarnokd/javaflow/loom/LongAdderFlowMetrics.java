@@ -0,0 +1,218 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.lang.ref.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link FlowMetrics} accumulating the events into {@link LongAdder}s per reporting
+ * component class and per {@link ExecutorPool}.
+ * <p>
+ * The pools are referenced weakly, so the counters of a pool no longer in use get dropped.
+ */
+public final class LongAdderFlowMetrics implements FlowMetrics {
+
+    final ConcurrentHashMap<Class<?>, Counters> sources;
+
+    final ConcurrentHashMap<Object, Counters> pools;
+
+    final ReferenceQueue<ExecutorPool> collectedPools;
+
+    public LongAdderFlowMetrics() {
+        this.sources = new ConcurrentHashMap<>();
+        this.pools = new ConcurrentHashMap<>();
+        this.collectedPools = new ReferenceQueue<>();
+    }
+
+    /**
+     * Returns the counters of the given component class, creating them if necessary.
+     * @param source the component class, such as {@code FiberPublisher.class}
+     * @return the counters
+     */
+    public Counters counters(Class<?> source) {
+        var c = sources.get(source);
+        if (c == null) {
+            c = sources.computeIfAbsent(source, k -> new Counters());
+        }
+        return c;
+    }
+
+    /**
+     * Returns the counters of the components running on the given pool, creating them if necessary.
+     * @param pool the pool
+     * @return the counters
+     */
+    public Counters counters(ExecutorPool pool) {
+        var c = pools.get(new PoolLookup(pool));
+        if (c == null) {
+            expungeCollectedPools();
+            c = pools.computeIfAbsent(new PoolKey(pool, collectedPools), k -> new Counters());
+        }
+        return c;
+    }
+
+    void expungeCollectedPools() {
+        Reference<?> ref;
+        while ((ref = collectedPools.poll()) != null) {
+            pools.remove(ref);
+        }
+    }
+
+    @Override
+    public void emitted(Class<?> source, ExecutorPool pool, long count) {
+        counters(source).emitted.add(count);
+        if (pool != null) {
+            counters(pool).emitted.add(count);
+        }
+    }
+
+    @Override
+    public void suspended(Class<?> source, ExecutorPool pool) {
+        counters(source).suspended.increment();
+        if (pool != null) {
+            counters(pool).suspended.increment();
+        }
+    }
+
+    @Override
+    public void resumed(Class<?> source, ExecutorPool pool) {
+        counters(source).resumed.increment();
+        if (pool != null) {
+            counters(pool).resumed.increment();
+        }
+    }
+
+    @Override
+    public void cancelled(Class<?> source, ExecutorPool pool) {
+        counters(source).cancelled.increment();
+        if (pool != null) {
+            counters(pool).cancelled.increment();
+        }
+    }
+
+    @Override
+    public void parked(Class<?> source, ExecutorPool pool, long nanos) {
+        counters(source).park(nanos);
+        if (pool != null) {
+            counters(pool).park(nanos);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Weakly references a pool as the key of the pool counters.
+     */
+    static final class PoolKey extends WeakReference<ExecutorPool> {
+
+        final int hash;
+
+        PoolKey(ExecutorPool pool, ReferenceQueue<ExecutorPool> queue) {
+            super(pool, queue);
+            this.hash = System.identityHashCode(pool);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (obj instanceof PoolKey) {
+                var pool = get();
+                return pool != null && pool == ((PoolKey)obj).get();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Finds the counters of a pool without allocating a weak reference.
+     */
+    static final class PoolLookup {
+
+        final ExecutorPool pool;
+
+        PoolLookup(ExecutorPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(pool);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof PoolKey && ((PoolKey)obj).get() == pool;
+        }
+    }
+
+    public static final class Counters {
+
+        final LongAdder emitted = new LongAdder();
+
+        final LongAdder suspended = new LongAdder();
+
+        final LongAdder resumed = new LongAdder();
+
+        final LongAdder cancelled = new LongAdder();
+
+        final LongAdder parks = new LongAdder();
+
+        final LongAdder parkedNanos = new LongAdder();
+
+        Counters() {
+        }
+
+        void park(long nanos) {
+            parks.increment();
+            parkedNanos.add(nanos);
+        }
+
+        public long emitted() {
+            return emitted.sum();
+        }
+
+        public long suspended() {
+            return suspended.sum();
+        }
+
+        public long resumed() {
+            return resumed.sum();
+        }
+
+        public long cancelled() {
+            return cancelled.sum();
+        }
+
+        /**
+         * Returns the number of timed suspensions.
+         * @return the number of timed suspensions
+         */
+        public long parks() {
+            return parks.sum();
+        }
+
+        /**
+         * Returns the total time spent suspended, in nanoseconds.
+         * @return the total time spent suspended
+         */
+        public long parkedNanos() {
+            return parkedNanos.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "Counters[emitted=" + emitted() + ", suspended=" + suspended() + ", resumed=" + resumed()
+                + ", cancelled=" + cancelled() + ", parks=" + parks() + ", parkedNanos=" + parkedNanos() + "]";
+        }
+    }
+}
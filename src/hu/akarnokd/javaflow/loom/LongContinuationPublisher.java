@@ -0,0 +1,101 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.Arrays;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.function.*;
+
+/**
+ * Runs a {@code long} generator via a {@link ContinuationPublisher} and emits the generated
+ * {@code long}s in {@code long[]} chunks of up to {@code chunkSize} items, so the generator
+ * doesn't box or yield per item.
+ * <p>
+ * A chunk is emitted when it fills up or when the generator returns, thus a slow generator may
+ * want a smaller chunk size. Use {@link LongFiberConsumer} to iterate over the items.
+ */
+public final class LongContinuationPublisher implements FusablePublisher<long[]> {
+
+    final ContinuationPublisher<long[]> chunks;
+
+    public LongContinuationPublisher(Consumer<LongConsumer> continuableGenerator) {
+        this(continuableGenerator, LongFiberPublisher.DEFAULT_CHUNK_SIZE);
+    }
+
+    public LongContinuationPublisher(Consumer<LongConsumer> continuableGenerator, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize > 0 required but it was " + chunkSize);
+        }
+        this.chunks = new ContinuationPublisher<>(emitter -> {
+            var chunker = new ChunkConsumer(emitter, chunkSize);
+            try {
+                continuableGenerator.accept(chunker);
+            } catch (Throwable ex) {
+                // deliver the items generated before the failure
+                chunker.flushQuietly();
+                throw ex;
+            }
+            chunker.flush();
+        });
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super long[]> subscriber) {
+        chunks.subscribe(subscriber);
+    }
+
+    @Override
+    public CloseableIterator<long[]> fusedIterator() {
+        return chunks.fusedIterator();
+    }
+
+    static final class ChunkConsumer implements LongConsumer {
+
+        final Consumer<? super long[]> downstream;
+
+        final int chunkSize;
+
+        long[] buffer;
+
+        int size;
+
+        ChunkConsumer(Consumer<? super long[]> downstream, int chunkSize) {
+            this.downstream = downstream;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public void accept(long item) {
+            var b = buffer;
+            if (b == null) {
+                b = new long[chunkSize];
+                buffer = b;
+            }
+            var s = size;
+            b[s] = item;
+            if (++s == chunkSize) {
+                buffer = null;
+                size = 0;
+                downstream.accept(b);
+            } else {
+                size = s;
+            }
+        }
+
+        void flushQuietly() {
+            try {
+                flush();
+            } catch (Throwable ignored) {
+                // cancelled meanwhile, nobody is there to receive the chunk
+            }
+        }
+
+        void flush() {
+            var s = size;
+            if (s != 0) {
+                var b = buffer;
+                buffer = null;
+                size = 0;
+                downstream.accept(Arrays.copyOf(b, s));
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package hu.akarnokd.javaflow.loom;
+
+/**
+ * The primitive {@code long} specialization of {@link Emitter}.
+ */
+public interface LongEmitter {
+
+    void emit(long item) throws Throwable;
+}
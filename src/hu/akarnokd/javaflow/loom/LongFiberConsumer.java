@@ -0,0 +1,74 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.Flow.Publisher;
+
+/**
+ * Iterates over the items of a {@code long[]} chunk publisher, such as {@link LongFiberPublisher}
+ * or {@link LongContinuationPublisher}, without boxing them. The chunks themselves
+ * are handed over via a {@link FiberConsumer}.
+ */
+public final class LongFiberConsumer {
+
+    final FiberConsumer<long[]> chunks;
+
+    public LongFiberConsumer(Publisher<? extends long[]> source) {
+        this.chunks = new FiberConsumer<>(source);
+    }
+
+    public CloseableLongIterator iterator() {
+        return new ChunkIterator(chunks.iterator());
+    }
+
+    /**
+     * Returns an iterator that keeps up to {@code prefetch} chunks ready.
+     * @param prefetch the number of chunks to request upfront, positive
+     * @return the new iterator
+     * @see FiberConsumer#iterator(int)
+     */
+    public CloseableLongIterator iterator(int prefetch) {
+        return new ChunkIterator(chunks.iterator(prefetch));
+    }
+
+    static final class ChunkIterator implements CloseableLongIterator {
+
+        final CloseableIterator<long[]> chunks;
+
+        long[] current;
+
+        int index;
+
+        ChunkIterator(CloseableIterator<long[]> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public boolean hasNext() {
+            var c = current;
+            while (c == null || index == c.length) {
+                if (!chunks.hasNext()) {
+                    current = null;
+                    return false;
+                }
+                c = chunks.next();
+                current = c;
+                index = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public long nextLong() {
+            if (hasNext()) {
+                return current[index++];
+            }
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public void close() throws Exception {
+            current = null;
+            chunks.close();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package hu.akarnokd.javaflow.loom;
+
+/**
+ * The primitive {@code long} specialization of {@link FiberGenerator}.
+ */
+@FunctionalInterface
+public interface LongFiberGenerator {
+
+    void generate(LongEmitter emitter) throws Throwable;
+}
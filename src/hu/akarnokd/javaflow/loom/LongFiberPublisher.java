@@ -0,0 +1,98 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Flow.Subscriber;
+
+/**
+ * Runs a {@link LongFiberGenerator} via a {@link FiberPublisher} and emits the generated
+ * {@code long}s in {@code long[]} chunks of up to {@code chunkSize} items, so the generator
+ * doesn't box or suspend per item.
+ * <p>
+ * A chunk is emitted when it fills up or when the generator returns, thus a slow generator may
+ * want a smaller chunk size. Use {@link LongFiberConsumer} to iterate over the items.
+ */
+public final class LongFiberPublisher implements Flow.Publisher<long[]> {
+
+    static final int DEFAULT_CHUNK_SIZE = 128;
+
+    final FiberPublisher<long[]> chunks;
+
+    public LongFiberPublisher(LongFiberGenerator generator) {
+        this(generator, DEFAULT_CHUNK_SIZE);
+    }
+
+    public LongFiberPublisher(LongFiberGenerator generator, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize > 0 required but it was " + chunkSize);
+        }
+        this.chunks = new FiberPublisher<>(emitter -> {
+            var chunker = new ChunkEmitter(emitter, chunkSize);
+            try {
+                generator.generate(chunker);
+            } catch (Throwable ex) {
+                // deliver the items generated before the failure
+                chunker.flushQuietly();
+                throw ex;
+            }
+            chunker.flush();
+        });
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super long[]> subscriber) {
+        chunks.subscribe(subscriber);
+    }
+
+    static final class ChunkEmitter implements LongEmitter {
+
+        final Emitter<long[]> downstream;
+
+        final int chunkSize;
+
+        long[] buffer;
+
+        int size;
+
+        ChunkEmitter(Emitter<long[]> downstream, int chunkSize) {
+            this.downstream = downstream;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public void emit(long item) throws Throwable {
+            var b = buffer;
+            if (b == null) {
+                b = new long[chunkSize];
+                buffer = b;
+            }
+            var s = size;
+            b[s] = item;
+            if (++s == chunkSize) {
+                buffer = null;
+                size = 0;
+                downstream.emit(b);
+            } else {
+                size = s;
+            }
+        }
+
+        void flushQuietly() {
+            try {
+                flush();
+            } catch (Throwable ignored) {
+                // cancelled meanwhile, nobody is there to receive the chunk
+            }
+        }
+
+        void flush() throws Throwable {
+            var s = size;
+            if (s != 0) {
+                var b = buffer;
+                buffer = null;
+                size = 0;
+                downstream.emit(Arrays.copyOf(b, s));
+            }
+        }
+    }
+}
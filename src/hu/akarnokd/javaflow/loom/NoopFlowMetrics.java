@@ -0,0 +1,41 @@
+package hu.akarnokd.javaflow.loom;
+
+/**
+ * The {@link FlowMetrics} ignoring all events.
+ * <p>
+ * While this is the only implementation seen at a call site, the JIT inlines
+ * the empty methods and the metrics reporting costs nothing.
+ */
+enum NoopFlowMetrics implements FlowMetrics {
+    INSTANCE;
+
+    @Override
+    public void emitted(Class<?> source, ExecutorPool pool, long count) {
+        // deliberately ignored
+    }
+
+    @Override
+    public void suspended(Class<?> source, ExecutorPool pool) {
+        // deliberately ignored
+    }
+
+    @Override
+    public void resumed(Class<?> source, ExecutorPool pool) {
+        // deliberately ignored
+    }
+
+    @Override
+    public void cancelled(Class<?> source, ExecutorPool pool) {
+        // deliberately ignored
+    }
+
+    @Override
+    public void parked(Class<?> source, ExecutorPool pool, long nanos) {
+        // deliberately ignored
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+}
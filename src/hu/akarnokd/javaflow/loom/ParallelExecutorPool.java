@@ -1,38 +1,158 @@
 package hu.akarnokd.javaflow.loom;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 public final class ParallelExecutorPool implements ExecutorPool {
 
-    final ExecutorService[] executors;
+    /**
+     * How {@link #worker()} picks the executor for the next worker.
+     */
+    public enum Assignment {
+        /** Cycle through the executors. */
+        ROUND_ROBIN,
+        /** Pick the executor with the fewest unclosed workers. */
+        LEAST_WORKERS,
+        /** Pick the one with the shorter task queue out of two random executors. */
+        TWO_CHOICES
+    }
+
+    final ParallelExecutor[] executors;
+
+    final Assignment assignment;
 
-    int n;
+    final AtomicInteger index;
 
     public ParallelExecutorPool(int parallelism) {
-        this.executors = new ExecutorService[parallelism];
+        this(parallelism, Assignment.ROUND_ROBIN);
+    }
+
+    public ParallelExecutorPool(int parallelism, Assignment assignment) {
+        this.executors = new ParallelExecutor[parallelism];
         for (int i = 0; i < parallelism; i++) {
-            executors[i] = Executors.newSingleThreadExecutor();
+            executors[i] = new ParallelExecutor();
         }
+        this.assignment = assignment;
+        this.index = new AtomicInteger();
     }
 
     @Override
     public ExecutorWorker worker() {
-        var index = n;
-
-        var result = new SingleExecutorPool.SingleExecutorWorker(executors[index]);
+        var event = new FlowEvents.WorkerAcquire();
+        event.begin();
+        var executor = executors[pick()];
+        executor.workers.getAndIncrement();
+        FlowEvents.acquired(event, ParallelExecutorPool.class);
+        return new ParallelExecutorWorker(executor);
+    }
 
-        if (++index == executors.length) {
-            index = 0;
+    int pick() {
+        var n = executors.length;
+        switch (assignment) {
+        case LEAST_WORKERS: {
+            var result = 0;
+            var min = Integer.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                var w = executors[i].workers.get();
+                if (w < min) {
+                    min = w;
+                    result = i;
+                }
+            }
+            return result;
+        }
+        case TWO_CHOICES: {
+            if (n == 1) {
+                return 0;
+            }
+            var random = ThreadLocalRandom.current();
+            var a = random.nextInt(n);
+            var b = random.nextInt(n - 1);
+            if (b >= a) {
+                b++;
+            }
+            var qa = queueDepth(a);
+            var qb = queueDepth(b);
+            if (qa == qb) {
+                return executors[a].workers.get() <= executors[b].workers.get() ? a : b;
+            }
+            return qa < qb ? a : b;
+        }
+        default:
+            return Math.floorMod(index.getAndIncrement(), n);
         }
-        // weak round-robin
-        n = index;
-        return result;
+    }
+
+    public int parallelism() {
+        return executors.length;
+    }
+
+    /**
+     * Returns the number of workers handed out but not yet closed for the given executor.
+     * @param index the executor index
+     * @return the number of outstanding workers
+     */
+    public int workers(int index) {
+        return executors[index].workers.get();
+    }
+
+    /**
+     * Returns the number of tasks waiting for execution on the given executor.
+     * @param index the executor index
+     * @return the number of queued tasks
+     */
+    public int queueDepth(int index) {
+        return executors[index].service.getQueue().size();
     }
 
     @Override
     public void close() {
         for (var executor : executors) {
-            executor.shutdown();
+            executor.service.shutdown();
+        }
+    }
+
+    static final class ParallelExecutor {
+
+        final ThreadPoolExecutor service;
+
+        final AtomicInteger workers;
+
+        final ThreadFactory fibers;
+
+        ParallelExecutor() {
+            this.service = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+            this.workers = new AtomicInteger();
+            this.fibers = Thread.builder().virtual(service).factory();
+        }
+    }
+
+    static final class ParallelExecutorWorker extends AtomicBoolean implements ExecutorWorker {
+
+        private static final long serialVersionUID = 4785932086419652207L;
+
+        final ParallelExecutor executor;
+
+        ParallelExecutorWorker(ParallelExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            executor.service.execute(command);
+        }
+
+        @Override
+        public void startFiber(Runnable task) {
+            executor.fibers.newThread(task).start();
+        }
+
+        @Override
+        public void close() {
+            if (compareAndSet(false, true)) {
+                executor.workers.getAndDecrement();
+                FlowEvents.released(ParallelExecutorPool.class);
+            }
         }
     }
 }
@@ -0,0 +1,211 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.Flow.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Emits the items of a {@link BlockingQueue} from a fiber of the given {@link ExecutorPool}, taking them in bulk via
+ * {@link BlockingQueue#drainTo(Collection, int)} up to the outstanding request amount (and at most {@code maxBatch}).
+ * <p>
+ * The fiber blocks in {@link BlockingQueue#take()} only when the queue is empty and the downstream has requested,
+ * and parks while the downstream has not requested. The sequence completes when the {@code endMarker}, if not null,
+ * is taken from the queue; the marker is not emitted. Cancelling interrupts a blocked {@code take()}; the items
+ * already drained from the queue but not yet emitted are dropped.
+ * @param <T> the element type
+ */
+public final class QueuePublisher<T> implements Flow.Publisher<T> {
+
+    final BlockingQueue<T> queue;
+
+    final ExecutorPool pool;
+
+    final T endMarker;
+
+    final int maxBatch;
+
+    public QueuePublisher(BlockingQueue<T> queue, ExecutorPool pool, T endMarker) {
+        this(queue, pool, endMarker, 256);
+    }
+
+    public QueuePublisher(BlockingQueue<T> queue, ExecutorPool pool, T endMarker, int maxBatch) {
+        if (maxBatch <= 0) {
+            throw new IllegalArgumentException("maxBatch > 0 required but it was " + maxBatch);
+        }
+        this.queue = queue;
+        this.pool = pool;
+        this.endMarker = endMarker;
+        this.maxBatch = maxBatch;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        var worker = pool.worker();
+        var qs = new QueueSubscription<T>(subscriber, this, worker);
+        subscriber.onSubscribe(qs);
+        worker.startFiber(qs);
+    }
+
+    static final class QueueSubscription<T> extends AtomicLong implements Subscription, Runnable {
+
+        private static final long serialVersionUID = -2236154426874094417L;
+
+        final Subscriber<? super T> downstream;
+
+        final BlockingQueue<T> queue;
+
+        final ExecutorPool pool;
+
+        final ExecutorWorker worker;
+
+        final T endMarker;
+
+        final int maxBatch;
+
+        final FlowMetrics metrics;
+
+        volatile boolean cancelled;
+
+        volatile Throwable badRequest;
+
+        /** The fiber parked for requests, null if not waiting. */
+        volatile Thread waiter;
+
+        /** The fiber blocked in {@code take()}, null if not taking. */
+        volatile Thread taker;
+
+        long produced;
+
+        QueueSubscription(Subscriber<? super T> downstream, QueuePublisher<T> parent, ExecutorWorker worker) {
+            this.downstream = downstream;
+            this.queue = parent.queue;
+            this.pool = parent.pool;
+            this.worker = worker;
+            this.endMarker = parent.endMarker;
+            this.maxBatch = parent.maxBatch;
+            this.metrics = FlowMetrics.current();
+        }
+
+        @Override
+        public void run() {
+            var batch = new ArrayList<T>(Math.min(maxBatch, 1024));
+            try {
+                for (;;) {
+                    if (cancelled) {
+                        return;
+                    }
+                    var r = get() - produced;
+                    if (r == 0L) {
+                        awaitRequest();
+                        continue;
+                    }
+                    var ex = badRequest;
+                    if (ex != null) {
+                        downstream.onError(ex);
+                        return;
+                    }
+
+                    var n = (int)Math.min(r, maxBatch);
+                    queue.drainTo(batch, n);
+                    if (batch.isEmpty()) {
+                        batch.add(take());
+                        if (n > 1) {
+                            queue.drainTo(batch, n - 1);
+                        }
+                    }
+
+                    var count = 0;
+                    for (var v : batch) {
+                        if (cancelled) {
+                            return;
+                        }
+                        if (v == endMarker) {
+                            metrics.emitted(QueuePublisher.class, pool, count);
+                            downstream.onComplete();
+                            return;
+                        }
+                        downstream.onNext(v);
+                        count++;
+                    }
+                    batch.clear();
+                    produced += count;
+                    metrics.emitted(QueuePublisher.class, pool, count);
+                }
+            } catch (Throwable ex) {
+                // an interrupted take() or a crashing downstream
+                if (!cancelled) {
+                    cancelled = true;
+                    downstream.onError(ex);
+                }
+            } finally {
+                // a cancel() may have interrupted after take() returned
+                Thread.interrupted();
+                worker.close();
+            }
+        }
+
+        T take() throws InterruptedException {
+            taker = Thread.currentThread();
+            try {
+                if (cancelled) {
+                    throw new InterruptedException();
+                }
+                return queue.take();
+            } finally {
+                taker = null;
+            }
+        }
+
+        void awaitRequest() throws InterruptedException {
+            var m = metrics;
+            m.suspended(QueuePublisher.class, pool);
+            var start = m.isEnabled() ? System.nanoTime() : 0L;
+            waiter = Thread.currentThread();
+            try {
+                while (get() == produced && !cancelled) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            } finally {
+                waiter = null;
+                if (m.isEnabled()) {
+                    m.parked(QueuePublisher.class, pool, System.nanoTime() - start);
+                }
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                badRequest = Requests.badRequest(n);
+                n = 1; // this will resume a waiting fiber
+            }
+            Requests.addCap(this, n);
+            var w = waiter;
+            if (w != null) {
+                metrics.resumed(QueuePublisher.class, pool);
+                LockSupport.unpark(w);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                metrics.cancelled(QueuePublisher.class, pool);
+                cancelled = true;
+                var w = waiter;
+                if (w != null) {
+                    LockSupport.unpark(w);
+                }
+                var t = taker;
+                if (t != null) {
+                    t.interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.*;
+import java.util.concurrent.Flow.*;
+
+/**
+ * Puts the received items into a bounded {@link BlockingQueue}, translating the queue's free capacity
+ * into batched {@link Subscription#request(long)} calls.
+ * <p>
+ * Initially, the remaining capacity of the queue is requested. After each item, the capacity not covered by
+ * outstanding requests is requested again once it reaches 75% of the initial amount, or when nothing is outstanding.
+ * If other producers filled up the queue meanwhile, {@code onNext} blocks in {@link BlockingQueue#put(Object)},
+ * thus the upstream should run on a fiber, e.g., via {@link FiberSubscribeOnPublisher}. When the upstream
+ * terminates, the {@code endMarker}, if not null, is put into the queue, and {@link #error()} returns the failure, if any.
+ * If a blocking put gets interrupted, the upstream is cancelled, the end marker is put into the queue once it has
+ * room and {@link #error()} returns the {@link InterruptedException}.
+ * @param <T> the element type
+ */
+public final class QueueSubscriber<T> implements Subscriber<T> {
+
+    final BlockingQueue<T> queue;
+
+    final T endMarker;
+
+    final FlowMetrics metrics;
+
+    volatile Subscription upstream;
+
+    volatile boolean cancelled;
+
+    volatile Throwable error;
+
+    /** The requested but not yet received items, accessed only from the upstream's signals. */
+    long outstanding;
+
+    long limit;
+
+    public QueueSubscriber(BlockingQueue<T> queue, T endMarker) {
+        this.queue = queue;
+        this.endMarker = endMarker;
+        this.metrics = FlowMetrics.current();
+    }
+
+    /**
+     * Returns the failure of the upstream or of putting an item into the queue.
+     * @return the failure or null if there was none (yet)
+     */
+    public Throwable error() {
+        return error;
+    }
+
+    /**
+     * Cancels the upstream; the end marker is not put into the queue.
+     */
+    public void cancel() {
+        if (!cancelled) {
+            metrics.cancelled(QueueSubscriber.class, null);
+            cancelled = true;
+            var s = upstream;
+            if (s != null) {
+                s.cancel();
+            }
+        }
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        if (cancelled) {
+            subscription.cancel();
+            return;
+        }
+        var n = Math.max(1, queue.remainingCapacity());
+        limit = n == Integer.MAX_VALUE ? Long.MAX_VALUE : n - (n >> 2);
+        outstanding = n == Integer.MAX_VALUE ? Long.MAX_VALUE : n;
+        subscription.request(outstanding);
+    }
+
+    @Override
+    public void onNext(T item) {
+        if (cancelled) {
+            return;
+        }
+        try {
+            queue.put(item);
+        } catch (InterruptedException ex) {
+            upstream.cancel();
+            cancelled = true;
+            error = ex;
+            // the consumer may be waiting for the end marker
+            putEndMarker();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        metrics.emitted(QueueSubscriber.class, null, 1L);
+
+        var o = outstanding;
+        if (o == Long.MAX_VALUE) {
+            return;
+        }
+        o--;
+        var free = queue.remainingCapacity() - o;
+        if (o == 0L && free <= 0L) {
+            // put() waits for a free slot, so keep the upstream going one item at a time
+            free = 1L;
+        }
+        if (free > 0L && (o == 0L || free >= limit)) {
+            o += free;
+            upstream.request(free);
+        }
+        outstanding = o;
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        terminate();
+    }
+
+    @Override
+    public void onComplete() {
+        terminate();
+    }
+
+    void terminate() {
+        if (!cancelled) {
+            putEndMarker();
+        }
+    }
+
+    void putEndMarker() {
+        var m = endMarker;
+        if (m == null) {
+            return;
+        }
+        var interrupted = false;
+        for (;;) {
+            try {
+                queue.put(m);
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
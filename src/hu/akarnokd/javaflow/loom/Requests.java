@@ -0,0 +1,69 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Helpers for the request accounting of the operators.
+ */
+final class Requests {
+
+    private Requests() {
+        throw new IllegalStateException("No instances!");
+    }
+
+    /**
+     * Atomically adds the amount to the requested counter, capping the sum at {@link Long#MAX_VALUE}.
+     * @param requested the counter
+     * @param n the positive amount to add
+     * @return the value of the counter before the addition
+     */
+    static long addCap(AtomicLong requested, long n) {
+        for (;;) {
+            var current = requested.get();
+            if (current == Long.MAX_VALUE) {
+                return current;
+            }
+            var next = current + n;
+            if (next < 0L) {
+                next = Long.MAX_VALUE;
+            }
+            if (requested.compareAndSet(current, next)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Atomically adds the amount to the requested {@code long} field accessed via the {@link VarHandle},
+     * capping the sum at {@link Long#MAX_VALUE}.
+     * @param requested the handle of the field
+     * @param owner the object holding the field
+     * @param n the positive amount to add
+     * @return the value of the field before the addition
+     */
+    static long addCap(VarHandle requested, Object owner, long n) {
+        for (;;) {
+            var current = (long)requested.getVolatile(owner);
+            if (current == Long.MAX_VALUE) {
+                return current;
+            }
+            var next = current + n;
+            if (next < 0L) {
+                next = Long.MAX_VALUE;
+            }
+            if (requested.compareAndSet(owner, current, next)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Creates the error for a non-positive request amount.
+     * @param n the amount requested
+     * @return the error
+     */
+    static IllegalArgumentException badRequest(long n) {
+        return new IllegalArgumentException("3.9 violated: positive request amount required but it was " + n);
+    }
+}
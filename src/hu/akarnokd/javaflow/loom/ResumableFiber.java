@@ -0,0 +1,108 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A one-bit permit that suspends a fiber (virtual thread) or a platform thread in {@link #await()}
+ * until another party calls {@link #resume()}.
+ * <p>
+ * The state is either empty, the permit or the parked waiter. {@link #resume()} can be called from
+ * any number of threads, any number of times: the calls coalesce into a single permit, and when the
+ * permit is already available or nobody waits, it doesn't allocate, lock or unpark anything.
+ * {@link #await()} should be called from one context at a time.
+ * <p>
+ * Similar to the queue-drain approach, the state the waiter checks has to be published before calling
+ * {@link #resume()}; the permit handover itself is a volatile write and read.
+ */
+public class ResumableFiber extends AtomicReference<Object> {
+
+    private static final long serialVersionUID = 3512864937166258404L;
+
+    /** Indicates the permit is available. */
+    static final Object READY = new Object();
+
+    final FlowMetrics metrics;
+
+    public ResumableFiber() {
+        this.metrics = FlowMetrics.current();
+    }
+
+    /**
+     * Consumes the permit, suspending the current thread until it becomes available.
+     * @throws InterruptedException if the thread was interrupted while waiting
+     * and the permit didn't arrive meanwhile
+     */
+    public final void await() throws InterruptedException {
+        var s = get();
+        if (s == null) {
+            var current = Thread.currentThread();
+            // if the CAS fails, only resume() could have changed the state, to READY
+            if (compareAndSet(null, current)) {
+                park(current);
+            }
+        } else if (s != READY) {
+            throw new IllegalStateException("Another thread is already waiting: " + s);
+        }
+        // resume() doesn't change READY, the waiter is the only one to clear it; being a volatile
+        // write, the caller's subsequent volatile re-check of its condition can't move before it,
+        // so a resume() after that re-check sees the cleared permit
+        set(null);
+    }
+
+    /**
+     * Consumes the permit if it is available.
+     * @return true if the permit was available and got consumed
+     */
+    public final boolean tryAwait() {
+        if (get() == READY) {
+            set(null);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Makes the permit available and unparks the waiter, if any.
+     * Can be called from any thread; multiple calls before the next
+     * {@link #await()} result in a single resumption.
+     */
+    public final void resume() {
+        for (;;) {
+            var s = get();
+            if (s == READY) {
+                return;
+            }
+            if (compareAndSet(s, READY)) {
+                if (s != null) {
+                    metrics.resumed(ResumableFiber.class, null);
+                    LockSupport.unpark((Thread)s);
+                }
+                return;
+            }
+        }
+    }
+
+    void park(Thread current) throws InterruptedException {
+        var m = metrics;
+        m.suspended(ResumableFiber.class, null);
+        var start = m.isEnabled() ? System.nanoTime() : 0L;
+        try {
+            while (get() == current) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    if (compareAndSet(current, null)) {
+                        throw new InterruptedException();
+                    }
+                    // the permit arrived anyway, keep the interrupt for the caller
+                    current.interrupt();
+                    return;
+                }
+            }
+        } finally {
+            if (m.isEnabled()) {
+                m.parked(ResumableFiber.class, null, System.nanoTime() - start);
+            }
+        }
+    }
+}
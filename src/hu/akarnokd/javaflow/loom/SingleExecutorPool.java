@@ -6,9 +6,11 @@ public final class SingleExecutorPool implements ExecutorPool, AutoCloseable {
 
     final ExecutorService service = Executors.newSingleThreadExecutor();
 
+    final ThreadFactory fibers = Thread.builder().virtual(service).factory();
+
     @Override
     public ExecutorWorker worker() {
-        return new SingleExecutorWorker(this.service);
+        return new SingleExecutorWorker(this.service, fibers);
     }
 
     @Override
@@ -20,8 +22,11 @@ public final class SingleExecutorPool implements ExecutorPool, AutoCloseable {
 
         final ExecutorService service;
 
-        SingleExecutorWorker(ExecutorService service) {
+        final ThreadFactory fibers;
+
+        SingleExecutorWorker(ExecutorService service, ThreadFactory fibers) {
             this.service = service;
+            this.fibers = fibers;
         }
 
         @Override
@@ -29,6 +34,11 @@ public final class SingleExecutorPool implements ExecutorPool, AutoCloseable {
             service.execute(command);
         }
 
+        @Override
+        public void startFiber(Runnable task) {
+            fibers.newThread(task).start();
+        }
+
         @Override
         public void close() {
             // no op
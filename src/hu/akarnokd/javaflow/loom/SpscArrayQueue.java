@@ -0,0 +1,74 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, single-producer single-consumer ring buffer where
+ * the emptiness of a slot indicates its availability.
+ * @param <T> the element type, nulls not allowed
+ */
+final class SpscArrayQueue<T> extends AtomicReferenceArray<T> {
+
+    private static final long serialVersionUID = 2867592125380934011L;
+
+    final int mask;
+
+    /** Accessed only by the producer. */
+    long producerIndex;
+
+    /** Accessed only by the consumer. */
+    long consumerIndex;
+
+    SpscArrayQueue(int capacity) {
+        super(roundToPowerOfTwo(capacity));
+        this.mask = length() - 1;
+    }
+
+    /**
+     * Offers an element with a volatile write so that a subsequent
+     * volatile read of the consumer's wait state can't be reordered before it.
+     * @param item the item to offer, not null
+     * @return false if the queue is full
+     */
+    boolean offer(T item) {
+        var pi = producerIndex;
+        var offset = (int)pi & mask;
+        if (get(offset) != null) {
+            return false;
+        }
+        set(offset, item);
+        producerIndex = pi + 1;
+        return true;
+    }
+
+    T poll() {
+        var ci = consumerIndex;
+        var offset = (int)ci & mask;
+        var v = get(offset);
+        if (v != null) {
+            lazySet(offset, null);
+            consumerIndex = ci + 1;
+        }
+        return v;
+    }
+
+    /**
+     * Returns the next element without removing it.
+     * @return the next element or null if the queue is empty
+     */
+    T peek() {
+        return get((int)consumerIndex & mask);
+    }
+
+    boolean isEmpty() {
+        return get((int)consumerIndex & mask) == null;
+    }
+
+    void clear() {
+        while (poll() != null) { }
+    }
+
+    static int roundToPowerOfTwo(int capacity) {
+        return 1 << (32 - Integer.numberOfLeadingZeros(Math.max(1, capacity) - 1));
+    }
+}
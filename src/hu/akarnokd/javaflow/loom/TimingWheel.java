@@ -0,0 +1,252 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timing wheel shared by the time-based operators running on the same {@link ExecutorPool}.
+ * <p>
+ * The wheel is driven by a fiber on a worker of the pool which ticks every millisecond while there are
+ * timers linked into the wheel and exits, releasing the worker, when there are none left. The wheel doesn't
+ * reference the pool itself, only its timers do, so an unused pool and its wheel can be garbage collected.
+ * <p>
+ * A {@link Timer} is a reusable node: scheduling, rescheduling and cancelling it are O(1), and only
+ * scheduling an unlinked timer touches the wheel, via a lock-free pending stack. Cancelling just clears
+ * its deadline; the wheel fiber unlinks it when it next visits its bucket. This way, an operator allocates
+ * one timer per subscription instead of a task and a future per scheduling.
+ */
+final class TimingWheel {
+
+    static final long TICK_NANOS = 1_000_000L;
+
+    static final int WHEEL_SIZE = 512;
+
+    static final Map<ExecutorPool, TimingWheel> WHEELS = new WeakHashMap<>();
+
+    final Timer[] buckets;
+
+    final AtomicReference<Timer> pending;
+
+    final AtomicBoolean running;
+
+    final long startTime;
+
+    /** The last tick processed, accessed only by the wheel fiber. */
+    long tick;
+
+    /** The number of timers linked into the buckets, accessed only by the wheel fiber. */
+    int size;
+
+    TimingWheel() {
+        this.buckets = new Timer[WHEEL_SIZE];
+        this.pending = new AtomicReference<>();
+        this.running = new AtomicBoolean();
+        this.startTime = System.nanoTime();
+    }
+
+    /**
+     * Returns the wheel of the given pool, creating it on first use.
+     * @param pool the pool whose workers run the wheel fiber
+     * @return the wheel
+     */
+    static TimingWheel of(ExecutorPool pool) {
+        synchronized (WHEELS) {
+            return WHEELS.computeIfAbsent(pool, p -> new TimingWheel());
+        }
+    }
+
+    /**
+     * Creates a timer on the wheel of the given pool that runs the action on the given executor whenever it expires.
+     * @param pool the pool whose workers run the wheel fiber
+     * @param action the action to run
+     * @param executor where to run the action, so the wheel fiber only hands it off
+     * @return the new, unscheduled timer
+     */
+    static Timer timer(ExecutorPool pool, Runnable action, Executor executor) {
+        return new Timer(of(pool), pool, action, executor);
+    }
+
+    void link(Timer timer) {
+        for (;;) {
+            var h = pending.get();
+            timer.nextPending = h;
+            if (pending.compareAndSet(h, timer)) {
+                break;
+            }
+        }
+        if (!running.get() && running.compareAndSet(false, true)) {
+            var worker = timer.pool.worker();
+            worker.startFiber(() -> {
+                try {
+                    run();
+                } finally {
+                    worker.close();
+                }
+            });
+        }
+    }
+
+    long tickOf(long deadline) {
+        return (deadline - startTime) / TICK_NANOS;
+    }
+
+    void run() {
+        var normal = false;
+        try {
+            loop();
+            normal = true;
+        } finally {
+            if (!normal) {
+                // let the next link() start a new wheel fiber should this one fail
+                running.set(false);
+            }
+        }
+    }
+
+    void loop() {
+        tick = tickOf(System.nanoTime()) - 1;
+        for (;;) {
+            addPending();
+
+            var now = System.nanoTime();
+            var nowTick = tickOf(now);
+            while (tick < nowTick) {
+                expire(++tick, now);
+            }
+
+            if (size == 0) {
+                running.set(false);
+                // a timer linked after the last addPending() but before the running flag got cleared
+                if (pending.get() == null || !running.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+
+            LockSupport.parkNanos(this, startTime + (tick + 1) * TICK_NANOS - now);
+        }
+    }
+
+    void addPending() {
+        var t = pending.getAndSet(null);
+        while (t != null) {
+            var next = t.nextPending;
+            t.nextPending = null;
+            insert(t, t.deadline);
+            size++;
+            t = next;
+        }
+    }
+
+    void insert(Timer t, long deadline) {
+        var index = (int)Math.max(tickOf(deadline), tick + 1) & (WHEEL_SIZE - 1);
+        t.next = buckets[index];
+        buckets[index] = t;
+    }
+
+    void expire(long tickIndex, long now) {
+        var index = (int)tickIndex & (WHEEL_SIZE - 1);
+        Timer t = buckets[index];
+        buckets[index] = null;
+        while (t != null) {
+            var next = t.next;
+            t.next = null;
+            var d = t.deadline;
+            if (d != Timer.IDLE && d - now > 0L) {
+                // not due yet: due in a later round or got rescheduled
+                insert(t, d);
+            } else {
+                if (d != Timer.IDLE && Timer.DEADLINE.compareAndSet(t, d, Timer.IDLE)) {
+                    try {
+                        t.executor.execute(t.action);
+                    } catch (RejectedExecutionException ex) {
+                        // the action's executor has been shut down, nobody is there to run it
+                    }
+                }
+                // unlink, then take it back if it got scheduled again meanwhile
+                t.linked = false;
+                if (t.deadline != Timer.IDLE && Timer.LINKED.compareAndSet(t, false, true)) {
+                    insert(t, t.deadline);
+                } else {
+                    size--;
+                }
+            }
+            t = next;
+        }
+    }
+
+    /**
+     * A reusable timer node of a {@link TimingWheel}.
+     */
+    static final class Timer {
+
+        static final VarHandle DEADLINE;
+
+        static final VarHandle LINKED;
+
+        static {
+            try {
+                var lookup = MethodHandles.lookup();
+                DEADLINE = lookup.findVarHandle(Timer.class, "deadline", long.class);
+                LINKED = lookup.findVarHandle(Timer.class, "linked", boolean.class);
+            } catch (ReflectiveOperationException ex) {
+                throw new InternalError(ex);
+            }
+        }
+
+        /** Indicates the timer is not scheduled. */
+        static final long IDLE = Long.MIN_VALUE;
+
+        final TimingWheel wheel;
+
+        final ExecutorPool pool;
+
+        final Runnable action;
+
+        final Executor executor;
+
+        volatile long deadline = IDLE;
+
+        /** Set while the timer is in the pending stack or in a bucket. */
+        volatile boolean linked;
+
+        /** The next timer in the pending stack. */
+        Timer nextPending;
+
+        /** The next timer in the bucket, accessed only by the wheel fiber. */
+        Timer next;
+
+        Timer(TimingWheel wheel, ExecutorPool pool, Runnable action, Executor executor) {
+            this.wheel = wheel;
+            this.pool = pool;
+            this.action = action;
+            this.executor = executor;
+        }
+
+        /**
+         * Schedules the timer to expire after the given delay, replacing the previous deadline if any.
+         * @param delayNanos the delay in nanoseconds
+         */
+        void schedule(long delayNanos) {
+            var d = System.nanoTime() + Math.max(delayNanos, 0L);
+            deadline = d == IDLE ? d + 1 : d;
+            if (!linked && LINKED.compareAndSet(this, false, true)) {
+                wheel.link(this);
+            }
+        }
+
+        /**
+         * Cancels the timer if it is scheduled; it can be scheduled again later.
+         */
+        void cancel() {
+            deadline = IDLE;
+        }
+
+        boolean isScheduled() {
+            return deadline != IDLE;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package hu.akarnokd.javaflow.loom;
+
+import java.util.concurrent.*;
+
+/**
+ * An {@link ExecutorPool} whose workers run each task on a fresh virtual thread (fiber)
+ * scheduled on a dedicated carrier pool, separate from {@link ForkJoinPool#commonPool()}.
+ */
+public final class VirtualThreadExecutorPool implements ExecutorPool {
+
+    final Executor scheduler;
+
+    /** The carrier pool created by this pool, null if the scheduler was supplied externally. */
+    final ExecutorService ownScheduler;
+
+    final ThreadFactory factory;
+
+    public VirtualThreadExecutorPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a pool with a dedicated carrier {@link ForkJoinPool} of the given parallelism.
+     * @param parallelism the number of carrier threads, positive
+     */
+    public VirtualThreadExecutorPool(int parallelism) {
+        this(new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true), true);
+    }
+
+    /**
+     * Constructs a pool with the given carrier scheduler; the scheduler is not shut down by {@link #close()}.
+     * @param scheduler the executor the virtual threads get mounted on
+     */
+    public VirtualThreadExecutorPool(Executor scheduler) {
+        this(scheduler, false);
+    }
+
+    VirtualThreadExecutorPool(Executor scheduler, boolean own) {
+        this.scheduler = scheduler;
+        this.ownScheduler = own ? (ExecutorService)scheduler : null;
+        this.factory = Thread.builder().virtual(scheduler).factory();
+    }
+
+    @Override
+    public ExecutorWorker worker() {
+        return new VirtualThreadWorker(factory);
+    }
+
+    @Override
+    public void close() {
+        if (ownScheduler != null) {
+            ownScheduler.shutdown();
+        }
+    }
+
+    static final class VirtualThreadWorker implements ExecutorWorker {
+
+        final ThreadFactory factory;
+
+        VirtualThreadWorker(ThreadFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            factory.newThread(command).start();
+        }
+
+        @Override
+        public void startFiber(Runnable task) {
+            // already runs its tasks on fibers
+            execute(task);
+        }
+
+        @Override
+        public void close() {
+            // no op
+        }
+    }
+}
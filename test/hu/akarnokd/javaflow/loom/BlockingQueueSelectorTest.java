@@ -1,5 +1,8 @@
 package hu.akarnokd.javaflow.loom;
 
+import static org.junit.Assert.*;
+
+import java.util.*;
 import java.util.concurrent.*;
 
 import org.junit.Test;
@@ -37,4 +40,144 @@ public class BlockingQueueSelectorTest {
             }
         }
     }
+
+    @Test(timeout = 100_000)
+    public void direct() throws Exception {
+        int n = 1_000_000;
+        int m = 10;
+        try (var scope = Executors.newUnboundedExecutor(Thread.builder().virtual(ForkJoinPool.commonPool()).factory())) {
+
+            @SuppressWarnings("unchecked")
+            BlockingQueue<Integer>[] queues = new BlockingQueue[m];
+
+            for (int i = 0; i < queues.length; i++) {
+                queues[i] = new ArrayBlockingQueue<Integer>(10);
+            }
+
+            try (var selector = new BlockingQueueSelector<>(queues)) {
+                for (int i = 0; i < queues.length; i++) {
+                    var q = selector.source(i);
+
+                    scope.submit(() -> {
+                        for (int j = 0; j < n; j++) {
+                            q.put(j);
+                        }
+                        return null;
+                    });
+                }
+
+                var sum = 0L;
+                for (int i = 0; i < m * n; i++) {
+                    sum += selector.take();
+                }
+                assertEquals(m * (n - 1L) * n / 2, sum);
+            }
+        }
+    }
+
+    @Test
+    public void directDrainTo() throws Exception {
+        @SuppressWarnings("unchecked")
+        BlockingQueue<Integer>[] queues = new BlockingQueue[3];
+
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayBlockingQueue<Integer>(10);
+        }
+
+        try (var selector = new BlockingQueueSelector<>(queues)) {
+            for (int i = 0; i < 10; i++) {
+                selector.source(0).offer(i);
+            }
+            selector.source(1).offer(100);
+            selector.source(2).offer(200);
+
+            var list = new ArrayList<Integer>();
+            assertEquals(6, selector.drainTo(list, 6));
+
+            assertEquals(Arrays.asList(0, 1, 100, 200, 2, 3), list);
+
+            list.clear();
+            assertEquals(6, selector.drainTo(list));
+            assertEquals(Arrays.asList(4, 5, 6, 7, 8, 9), list);
+
+            assertEquals(0, selector.drainTo(list));
+        }
+    }
+
+    @Test
+    public void directWeighted() throws Exception {
+        @SuppressWarnings("unchecked")
+        BlockingQueue<Integer>[] queues = new BlockingQueue[2];
+
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayBlockingQueue<Integer>(10);
+        }
+
+        try (var selector = new BlockingQueueSelector<>(queues, new int[] { 3, 1 })) {
+            for (int i = 0; i < 10; i++) {
+                selector.source(0).offer(i);
+                selector.source(1).offer(100 + i);
+            }
+
+            var list = new ArrayList<Integer>();
+            for (int i = 0; i < 8; i++) {
+                list.add(selector.take());
+            }
+            assertEquals(Arrays.asList(0, 1, 2, 100, 3, 4, 5, 101), list);
+
+            list.clear();
+            assertEquals(8, selector.take(8, list));
+            assertEquals(Arrays.asList(6, 7, 8, 9, 102, 103, 104, 105), list);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void directPollTimeout() throws Exception {
+        @SuppressWarnings("unchecked")
+        BlockingQueue<Integer>[] queues = new BlockingQueue[2];
+
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayBlockingQueue<Integer>(10);
+        }
+
+        var exec = Executors.newSingleThreadScheduledExecutor();
+        try (var selector = new BlockingQueueSelector<>(queues)) {
+            assertNull(selector.poll(10, TimeUnit.MILLISECONDS));
+
+            exec.schedule(() -> selector.source(1).offer(1), 100, TimeUnit.MILLISECONDS);
+
+            assertEquals(1, selector.poll(5, TimeUnit.SECONDS).intValue());
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void directCloseUnblocksTake() throws Exception {
+        @SuppressWarnings("unchecked")
+        BlockingQueue<Integer>[] queues = new BlockingQueue[2];
+
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayBlockingQueue<Integer>(10);
+        }
+
+        var exec = Executors.newSingleThreadScheduledExecutor();
+        try {
+            var selector = new BlockingQueueSelector<>(queues);
+            exec.schedule(() -> {
+                selector.close();
+                return null;
+            }, 100, TimeUnit.MILLISECONDS);
+
+            try {
+                selector.take();
+                fail("Should have thrown");
+            } catch (IllegalStateException expected) {
+                // expected
+            }
+            assertNull(selector.poll(5, TimeUnit.SECONDS));
+        } finally {
+            exec.shutdown();
+        }
+    }
 }
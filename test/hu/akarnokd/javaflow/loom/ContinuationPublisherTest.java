@@ -307,4 +307,57 @@ public class ContinuationPublisherTest {
             exec.shutdown();
         }
     }
+
+    @Test
+    public void concurrentRequests() throws Exception {
+        int n = 10_000;
+        var p = new ContinuationPublisher<Integer>(emitter -> {
+            for (int i = 0; i < n; i++) {
+                emitter.accept(i);
+            }
+        });
+
+        var count = new AtomicInteger();
+        var exec = Executors.newFixedThreadPool(2);
+        try {
+            var cdl = new CountDownLatch(1);
+
+            p.subscribe(new Flow.Subscriber<Integer>() {
+
+                Subscription upstream;
+
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    this.upstream = subscription;
+                    exec.submit(() -> upstream.request(1));
+                    exec.submit(() -> upstream.request(1));
+                }
+
+                @Override
+                public void onNext(Integer item) {
+                    if (count.getAndIncrement() != item) {
+                        onError(new IllegalStateException("Out of order: " + item));
+                    }
+                    exec.submit(() -> upstream.request(1));
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    throwable.printStackTrace();
+                    cdl.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                    cdl.countDown();
+                }
+            });
+
+            assertTrue(cdl.await(30, TimeUnit.SECONDS));
+        } finally {
+            exec.shutdown();
+        }
+
+        assertEquals(n, count.get());
+    }
 }
@@ -0,0 +1,83 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class ElasticExecutorPoolTest {
+
+    @Test
+    public void growUpToMax() throws Exception {
+        try (var pool = new ElasticExecutorPool(2)) {
+            var w1 = pool.worker();
+            var w2 = pool.worker();
+            var w3 = pool.worker();
+
+            assertEquals(2, pool.size());
+
+            var cdl = new CountDownLatch(3);
+            w1.execute(cdl::countDown);
+            w2.execute(cdl::countDown);
+            w3.execute(cdl::countDown);
+
+            assertTrue(cdl.await(5, TimeUnit.SECONDS));
+
+            w1.close();
+            w2.close();
+            w3.close();
+        }
+    }
+
+    @Test
+    public void reuseIdle() throws Exception {
+        try (var pool = new ElasticExecutorPool(4)) {
+            var w1 = pool.worker();
+            w1.close();
+            w1.close();
+
+            var w2 = pool.worker();
+            assertEquals(1, pool.size());
+
+            var w3 = pool.worker();
+            assertEquals(2, pool.size());
+
+            w2.close();
+            w3.close();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void evictIdle() throws Exception {
+        try (var pool = new ElasticExecutorPool(4, 50, TimeUnit.MILLISECONDS)) {
+            var w1 = pool.worker();
+            var w2 = pool.worker();
+
+            assertEquals(2, pool.size());
+
+            w1.close();
+
+            while (pool.size() != 1) {
+                Thread.sleep(10);
+            }
+
+            Thread.sleep(200);
+
+            assertEquals(1, pool.size());
+
+            w2.close();
+
+            while (pool.size() != 0) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void closed() {
+        var pool = new ElasticExecutorPool(1);
+        pool.close();
+        pool.worker();
+    }
+}
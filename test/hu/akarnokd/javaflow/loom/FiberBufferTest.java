@@ -0,0 +1,173 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class FiberBufferTest {
+
+    static Flow.Publisher<Integer> range(int count) {
+        return new FiberPublisher<>(emitter -> {
+            for (int i = 0; i < count; i++) {
+                emitter.emit(i);
+            }
+        });
+    }
+
+    @Test(timeout = 10_000)
+    public void bySize() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var ts = new TestSubscriber<List<Integer>>();
+
+            new FiberBuffer<>(range(7), pool, 3, 1, TimeUnit.MINUTES).subscribe(ts);
+
+            ts.awaitDone().assertResult(Arrays.asList(
+                    Arrays.asList(0, 1, 2), Arrays.asList(3, 4, 5), Arrays.asList(6)));
+            // the timing wheel releases its worker once it found the cancelled timer
+            while (pool.workers(0) != 0) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void byTime() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var sp = new SubmissionPublisher<Integer>();
+            var ts = new TestSubscriber<List<Integer>>();
+
+            new FiberBuffer<>(sp, pool, 100, 50, TimeUnit.MILLISECONDS).subscribe(ts);
+
+            sp.submit(1);
+            sp.submit(2);
+
+            while (ts.values().isEmpty()) {
+                Thread.sleep(10);
+            }
+            assertEquals(Arrays.asList(Arrays.asList(1, 2)), ts.values());
+
+            sp.submit(3);
+            sp.close();
+
+            ts.awaitDone().assertResult(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3)));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void timeOnly() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var sp = new SubmissionPublisher<Integer>();
+            var ts = new TestSubscriber<List<Integer>>();
+
+            new FiberBuffer<>(sp, pool, Integer.MAX_VALUE, 50, TimeUnit.MILLISECONDS).subscribe(ts);
+
+            for (int i = 0; i < 100; i++) {
+                sp.submit(i);
+            }
+
+            while (ts.values().isEmpty()) {
+                Thread.sleep(10);
+            }
+            sp.close();
+
+            ts.awaitDone();
+            var count = 0;
+            for (var list : ts.values()) {
+                count += list.size();
+            }
+            assertEquals(100, count);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void backpressured() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var ts = new TestSubscriber<List<Integer>>(1);
+
+            new FiberSubscribeOnPublisher<>(new FiberBuffer<>(range(10), pool, 4, 1, TimeUnit.MINUTES), pool).subscribe(ts);
+
+            Thread.sleep(100);
+            assertEquals(Arrays.asList(Arrays.asList(0, 1, 2, 3)), ts.values());
+
+            ts.request(2);
+
+            ts.awaitDone().assertResult(Arrays.asList(
+                    Arrays.asList(0, 1, 2, 3), Arrays.asList(4, 5, 6, 7), Arrays.asList(8, 9)));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void reuse() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var sums = new ArrayList<Integer>();
+            var lists = Collections.newSetFromMap(new IdentityHashMap<List<Integer>, Boolean>());
+            var done = new CountDownLatch(1);
+
+            new FiberBuffer<>(range(10), pool, 5, 1, TimeUnit.MINUTES, true).subscribe(new Flow.Subscriber<List<Integer>>() {
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(List<Integer> item) {
+                    lists.add(item);
+                    sums.add(item.stream().mapToInt(v -> v).sum());
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    throwable.printStackTrace();
+                }
+
+                @Override
+                public void onComplete() {
+                    done.countDown();
+                }
+            });
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList(10, 35), sums);
+            assertEquals(1, lists.size());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void error() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var ts = new TestSubscriber<List<Integer>>();
+
+            new FiberBuffer<Integer>(new FiberPublisher<>(emitter -> {
+                emitter.emit(1);
+                throw new IllegalStateException("forced failure");
+            }), pool, 5, 1, TimeUnit.MINUTES).subscribe(ts);
+
+            ts.awaitDone().assertError(IllegalStateException.class);
+            // the timing wheel releases its worker once it found the cancelled timer
+            while (pool.workers(0) != 0) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void badRequest() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var sp = new SubmissionPublisher<Integer>();
+            var ts = new TestSubscriber<List<Integer>>(0);
+
+            new FiberBuffer<>(sp, pool, 4, 1, TimeUnit.MINUTES).subscribe(ts);
+
+            ts.request(0);
+
+            ts.awaitDone().assertError(IllegalArgumentException.class);
+            while (sp.hasSubscribers()) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class FiberConsumerTest {
+
+    @Test(timeout = 10_000)
+    public void normal() throws Exception {
+        var sp = new SubmissionPublisher<Integer>();
+        var exec = Executors.newSingleThreadExecutor();
+        try (var iter = new FiberConsumer<>(sp).iterator()) {
+            exec.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    sp.submit(i);
+                }
+                sp.close();
+            });
+
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(iter.hasNext());
+                assertEquals(i, iter.next().intValue());
+            }
+            assertFalse(iter.hasNext());
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void error() throws Exception {
+        var source = new FiberPublisher<Integer>(emitter -> {
+            emitter.emit(1);
+            throw new IllegalStateException("forced failure");
+        });
+        var exec = Executors.newSingleThreadExecutor();
+        try {
+            var async = (Flow.Publisher<Integer>)s -> exec.submit(() -> source.subscribe(s));
+
+            try (var iter = new FiberConsumer<>(async).iterator()) {
+                assertEquals(1, iter.next().intValue());
+                try {
+                    iter.hasNext();
+                    fail("Should have thrown");
+                } catch (RuntimeException ex) {
+                    assertTrue(ex.getCause() instanceof IllegalStateException);
+                }
+            }
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void close() throws Exception {
+        var cleanup = new CountDownLatch(1);
+        var source = new FiberPublisher<Integer>(emitter -> {
+            try {
+                for (int i = 0; ; i++) {
+                    emitter.emit(i);
+                }
+            } finally {
+                cleanup.countDown();
+            }
+        });
+        var exec = Executors.newSingleThreadExecutor();
+        try {
+            var async = (Flow.Publisher<Integer>)s -> exec.submit(() -> source.subscribe(s));
+
+            try (var iter = new FiberConsumer<>(async).iterator()) {
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(i, iter.next().intValue());
+                }
+            }
+
+            assertTrue(cleanup.await(5, TimeUnit.SECONDS));
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void prefetch() throws Exception {
+        var sp = new SubmissionPublisher<Integer>();
+        var exec = Executors.newSingleThreadExecutor();
+        try (var iter = new FiberConsumer<>(sp).iterator(16)) {
+            exec.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    sp.submit(i);
+                }
+                sp.close();
+            });
+
+            var list = new ArrayList<Integer>();
+            while (iter.hasNext()) {
+                list.add(iter.next());
+            }
+
+            assertEquals(1000, list.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, list.get(i).intValue());
+            }
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test(timeout = 30_000)
+    public void prefetchAsyncFiberPublisher() throws Exception {
+        int n = 1_000_000;
+        var source = new FiberPublisher<Integer>(emitter -> {
+            for (int i = 0; i < n; i++) {
+                emitter.emit(i);
+            }
+        });
+        var exec = Executors.newSingleThreadExecutor();
+        try {
+            var async = (Flow.Publisher<Integer>)s -> exec.submit(() -> source.subscribe(s));
+
+            try (var iter = new FiberConsumer<>(async).iterator(128)) {
+                int i = 0;
+                while (iter.hasNext()) {
+                    assertEquals(i++, iter.next().intValue());
+                }
+                assertEquals(n, i);
+            }
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void prefetchError() throws Exception {
+        var source = new FiberPublisher<Integer>(emitter -> {
+            emitter.emit(1);
+            throw new IllegalStateException("forced failure");
+        });
+
+        try (var iter = new FiberConsumer<>(source).iterator(4)) {
+            assertTrue(iter.hasNext());
+            assertEquals(1, iter.next().intValue());
+            try {
+                iter.hasNext();
+                fail("Should have thrown");
+            } catch (RuntimeException ex) {
+                assertTrue(ex.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void prefetchClose() throws Exception {
+        var cleanup = new CountDownLatch(1);
+        var source = new FiberPublisher<Integer>(emitter -> {
+            try {
+                for (int i = 0; ; i++) {
+                    emitter.emit(i);
+                }
+            } finally {
+                cleanup.countDown();
+            }
+        });
+        var exec = Executors.newSingleThreadExecutor();
+        try {
+            var async = (Flow.Publisher<Integer>)s -> exec.submit(() -> source.subscribe(s));
+
+            try (var iter = new FiberConsumer<>(async).iterator(8)) {
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(i, iter.next().intValue());
+                }
+            }
+
+            assertTrue(cleanup.await(5, TimeUnit.SECONDS));
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void fusedContinuationPublisher() throws Exception {
+        var source = new ContinuationPublisher<Integer>(emitter -> {
+            for (int i = 0; i < 1000; i++) {
+                emitter.accept(i);
+            }
+        });
+
+        try (var iter = new FiberConsumer<>(source).iterator()) {
+            assertTrue(iter instanceof ContinuationPublisher.ContinuationIterator);
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(iter.hasNext());
+                assertEquals(i, iter.next().intValue());
+            }
+            assertFalse(iter.hasNext());
+            try {
+                iter.next();
+                fail("Should have thrown");
+            } catch (NoSuchElementException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void fusedError() throws Exception {
+        var source = new ContinuationPublisher<Integer>(emitter -> {
+            emitter.accept(1);
+            throw new IllegalStateException("forced failure");
+        });
+
+        try (var iter = new FiberConsumer<>(source).iterator(16)) {
+            assertEquals(1, iter.next().intValue());
+            try {
+                iter.hasNext();
+                fail("Should have thrown");
+            } catch (RuntimeException expected) {
+                assertTrue(expected.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void fusedClose() throws Exception {
+        var cleanup = new CountDownLatch(1);
+        var source = new ContinuationPublisher<Integer>(emitter -> {
+            try {
+                for (int i = 0; ; i++) {
+                    emitter.accept(i);
+                }
+            } finally {
+                cleanup.countDown();
+            }
+        });
+
+        var iter = new FiberConsumer<>(source).iterator();
+        assertEquals(0, iter.next().intValue());
+        assertEquals(1, iter.next().intValue());
+        iter.close();
+
+        assertEquals(0, cleanup.getCount());
+        assertFalse(iter.hasNext());
+    }
+
+    @Test(timeout = 10_000)
+    public void stream() throws Exception {
+        try (var pool = new SingleExecutorPool()) {
+            var source = new FiberSubscribeOnPublisher<>(new FiberPublisher<Integer>(emitter -> {
+                for (int i = 1; i <= 1000; i++) {
+                    emitter.emit(i);
+                }
+            }), pool);
+
+            try (var stream = new FiberConsumer<>(source).stream(64)) {
+                assertEquals(500500L, stream.mapToLong(v -> v).sum());
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void parallelStream() throws Exception {
+        var n = 100_000;
+        var source = new ContinuationPublisher<Integer>(emitter -> {
+            for (int i = 0; i < n; i++) {
+                emitter.accept(i);
+            }
+        });
+
+        try (var stream = new FiberConsumer<>(source).stream(128)) {
+            var list = stream.parallel().map(v -> v + 1).collect(Collectors.toList());
+            assertEquals(n, list.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(i + 1, list.get(i).intValue());
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void parallelStreamConcurrentProducer() throws Exception {
+        var n = 100_000;
+        var produced = new AtomicInteger();
+        var overlapped = new AtomicBoolean();
+        try (var pool = new SingleExecutorPool()) {
+            var source = new FiberSubscribeOnPublisher<>(new FiberPublisher<Integer>(emitter -> {
+                for (int i = 0; i < n; i++) {
+                    if (i % 1000 == 999) {
+                        Thread.sleep(1);
+                    }
+                    emitter.emit(i);
+                    produced.lazySet(i + 1);
+                }
+            }), pool);
+
+            try (var stream = new FiberConsumer<>(source).stream(128)) {
+                var list = stream.parallel().map(v -> {
+                    if (produced.get() < n) {
+                        overlapped.set(true);
+                    }
+                    return v + 1;
+                }).collect(Collectors.toList());
+                assertEquals(n, list.size());
+                for (int i = 0; i < n; i++) {
+                    assertEquals(i + 1, list.get(i).intValue());
+                }
+            }
+        }
+        assertTrue("The batches were not processed while the source was producing", overlapped.get());
+    }
+
+    @Test
+    public void streamSplitsGrowingBatches() throws Exception {
+        try (var pool = new SingleExecutorPool()) {
+            var source = new FiberSubscribeOnPublisher<>(new FiberPublisher<Integer>(emitter -> {
+                for (int i = 0; i < 5000; i++) {
+                    emitter.emit(i);
+                }
+            }), pool);
+
+            var spliterator = new FiberConsumer.BatchSpliterator<>(new FiberConsumer<>(source).iterator(128));
+
+            assertEquals(1024, spliterator.trySplit().estimateSize());
+            assertEquals(2048, spliterator.trySplit().estimateSize());
+            assertEquals(5000 - 1024 - 2048, spliterator.trySplit().estimateSize());
+            assertNull(spliterator.trySplit());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void streamCloseCancels() throws Exception {
+        var cleanup = new CountDownLatch(1);
+        var source = new ContinuationPublisher<Integer>(emitter -> {
+            try {
+                for (int i = 0; ; i++) {
+                    emitter.accept(i);
+                }
+            } finally {
+                cleanup.countDown();
+            }
+        });
+
+        try (var stream = new FiberConsumer<>(source).stream()) {
+            assertEquals(Arrays.asList(0, 1, 2), stream.limit(3).collect(Collectors.toList()));
+        }
+
+        assertEquals(0, cleanup.getCount());
+    }
+}
@@ -0,0 +1,86 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class FiberDelayTest {
+
+    @Test(timeout = 10_000)
+    public void delayed() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var ts = new TestSubscriber<Integer>();
+            var source = new FiberPublisher<Integer>(emitter -> {
+                for (int i = 0; i < 100; i++) {
+                    emitter.emit(i);
+                }
+            });
+
+            var start = System.nanoTime();
+            new FiberDelay<>(source, pool, 50, TimeUnit.MILLISECONDS, 16).subscribe(ts);
+
+            var expected = new ArrayList<Integer>();
+            for (int i = 0; i < 100; i++) {
+                expected.add(i);
+            }
+            ts.awaitDone().assertResult(expected);
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void backpressured() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var ts = new TestSubscriber<Integer>(1);
+            var sp = new SubmissionPublisher<Integer>();
+
+            new FiberDelay<>(sp, pool, 10, TimeUnit.MILLISECONDS).subscribe(ts);
+
+            sp.submit(1);
+            sp.submit(2);
+            sp.close();
+
+            Thread.sleep(100);
+            assertEquals(Arrays.asList(1), ts.values());
+
+            ts.request(1);
+
+            ts.awaitDone().assertResult(Arrays.asList(1, 2));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void errorNotDelayed() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberDelay<>(new FiberPublisher<Integer>(emitter -> {
+                emitter.emit(1);
+                throw new IllegalStateException("forced failure");
+            }), pool, 1, TimeUnit.MINUTES).subscribe(ts);
+
+            ts.awaitDone().assertError(IllegalStateException.class);
+            assertTrue(ts.values().isEmpty());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void badRequest() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var sp = new SubmissionPublisher<Integer>();
+            var ts = new TestSubscriber<Integer>(0);
+
+            new FiberDelay<>(sp, pool, 1, TimeUnit.MINUTES).subscribe(ts);
+
+            ts.request(0);
+
+            ts.awaitDone().assertError(IllegalArgumentException.class);
+            while (sp.hasSubscribers()) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
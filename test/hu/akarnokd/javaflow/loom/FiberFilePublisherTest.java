@@ -0,0 +1,154 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.Flow.*;
+
+import org.junit.Test;
+
+public class FiberFilePublisherTest {
+
+    /**
+     * Copies the content of the received buffers as the direct mode reuses them.
+     */
+    static final class CopyingSubscriber implements Subscriber<ByteBuffer> {
+
+        final List<String> items = Collections.synchronizedList(new ArrayList<>());
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            assertTrue(item.isReadOnly());
+            var bytes = new byte[item.remaining()];
+            item.get(bytes);
+            items.add(new String(bytes, StandardCharsets.US_ASCII));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+
+        List<String> await() throws Exception {
+            assertTrue("Timeout", done.await(10, TimeUnit.SECONDS));
+            assertNull(error);
+            return items;
+        }
+    }
+
+    static String content() {
+        var sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+        return sb.toString();
+    }
+
+    static List<String> readWith(Path file, int chunkSize, boolean mapped, boolean records) throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var publisher = new FiberFilePublisher(file, pool, chunkSize, mapped);
+            var ts = new CopyingSubscriber();
+            (records ? publisher.records((byte)'\n') : publisher).subscribe(ts);
+            return ts.await();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void chunks() throws Exception {
+        var file = Files.createTempFile("fiberfile", ".txt");
+        try {
+            var content = content();
+            Files.writeString(file, content);
+
+            for (var mapped : new boolean[] { true, false }) {
+                var chunks = readWith(file, 1000, mapped, false);
+                assertEquals((content.length() + 999) / 1000, chunks.size());
+                assertEquals(content, String.join("", chunks));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void records() throws Exception {
+        var file = Files.createTempFile("fiberfile", ".txt");
+        try {
+            var content = content() + "last";
+            Files.writeString(file, content);
+            var expected = Arrays.asList(content.split("\n"));
+
+            for (var mapped : new boolean[] { true, false }) {
+                assertEquals(expected, readWith(file, 7, mapped, true));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void backpressure() throws Exception {
+        var file = Files.createTempFile("fiberfile", ".txt");
+        try {
+            Files.writeString(file, content());
+
+            try (var pool = new ParallelExecutorPool(1)) {
+                var ts = new TestSubscriber<ByteBuffer>(2);
+                new FiberFilePublisher(file, pool, 16, true).records((byte)'\n').subscribe(ts);
+
+                Thread.sleep(100);
+                var values = ts.values();
+                assertEquals(2, values.size());
+                assertEquals("line 1", StandardCharsets.US_ASCII.decode(values.get(1)).toString());
+
+                ts.cancel();
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void missingFile() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var ts = new TestSubscriber<ByteBuffer>();
+            new FiberFilePublisher(Paths.get("does-not-exist.txt"), pool).subscribe(ts);
+
+            ts.awaitDone().assertError(NoSuchFileException.class);
+        }
+    }
+
+    @Test
+    public void bufferPoolReuse() {
+        var buffers = new ByteBufferPool(16, 1);
+        var b1 = buffers.acquire();
+        var b2 = buffers.acquire();
+        assertTrue(b1.isDirect());
+        assertNotSame(b1, b2);
+
+        buffers.release(b1);
+        buffers.release(b2);
+
+        assertSame(b1, buffers.acquire());
+        assertNotSame(b2, buffers.acquire());
+    }
+}
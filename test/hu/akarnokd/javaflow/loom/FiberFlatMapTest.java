@@ -0,0 +1,145 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class FiberFlatMapTest {
+
+    static Flow.Publisher<Integer> range(int start, int count) {
+        return new FiberPublisher<Integer>(emitter -> {
+            for (int i = start; i < start + count; i++) {
+                emitter.emit(i);
+            }
+        });
+    }
+
+    @Test(timeout = 10_000)
+    public void normal() throws Exception {
+        try (var pool = new VirtualThreadExecutorPool(2)) {
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberSubscribeOnPublisher<>(new FiberFlatMap<Integer, Integer>(range(0, 100),
+                    v -> range(v * 1000, 100), pool, 4, 16), pool).subscribe(ts);
+
+            ts.awaitDone();
+
+            var list = ts.values();
+            assertEquals(10_000, list.size());
+            var set = new HashSet<>(list);
+            for (int i = 0; i < 100; i++) {
+                for (int j = 0; j < 100; j++) {
+                    assertTrue(set.contains(i * 1000 + j));
+                }
+            }
+            assertEquals(1, ts.completions);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void maxConcurrency() throws Exception {
+        try (var pool = new VirtualThreadExecutorPool(2)) {
+            var ts = new TestSubscriber<Integer>();
+            var concurrency = new AtomicInteger();
+            var maxConcurrency = new AtomicInteger();
+
+            new FiberSubscribeOnPublisher<>(new FiberFlatMap<Integer, Integer>(range(0, 20), v -> new FiberPublisher<Integer>(emitter -> {
+                maxConcurrency.accumulateAndGet(concurrency.incrementAndGet(), Math::max);
+                Thread.sleep(10);
+                emitter.emit(v);
+                concurrency.decrementAndGet();
+            }), pool, 3, 1), pool).subscribe(ts);
+
+            ts.awaitDone();
+            assertEquals(20, ts.values().size());
+            assertTrue("" + maxConcurrency.get(), maxConcurrency.get() <= 3);
+            assertTrue("" + maxConcurrency.get(), maxConcurrency.get() > 1);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void backpressured() throws Exception {
+        try (var pool = new VirtualThreadExecutorPool(2)) {
+            var ts = new TestSubscriber<Integer>(0);
+
+            new FiberSubscribeOnPublisher<>(new FiberFlatMap<Integer, Integer>(range(0, 10),
+                    v -> range(v * 10, 10), pool, 2, 4), pool).subscribe(ts);
+
+            for (int i = 0; i < 100; i++) {
+                Thread.sleep(1);
+                assertEquals(i, ts.values().size());
+                ts.request(1);
+                while (ts.values().size() != i + 1) {
+                    Thread.sleep(1);
+                }
+            }
+
+            ts.awaitDone();
+            assertEquals(1, ts.completions);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void innerError() throws Exception {
+        try (var pool = new VirtualThreadExecutorPool(2)) {
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberSubscribeOnPublisher<>(new FiberFlatMap<Integer, Integer>(range(0, 10), v -> new FiberPublisher<Integer>(emitter -> {
+                if (v == 5) {
+                    throw new IllegalStateException("forced failure");
+                }
+                emitter.emit(v);
+            }), pool, 1, 1), pool).subscribe(ts);
+
+            ts.awaitDone().assertError(IllegalStateException.class);
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4), ts.values());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void cancelStopsInners() throws Exception {
+        try (var pool = new VirtualThreadExecutorPool(2)) {
+            var ts = new TestSubscriber<Integer>(4);
+            var cleanup = new CountDownLatch(2);
+
+            new FiberSubscribeOnPublisher<>(new FiberFlatMap<Integer, Integer>(range(0, 2), v -> new FiberPublisher<Integer>(emitter -> {
+                try {
+                    for (int i = 0; ; i++) {
+                        emitter.emit(i);
+                    }
+                } finally {
+                    cleanup.countDown();
+                }
+            }), pool, 2, 8), pool).subscribe(ts);
+
+            while (ts.values().size() != 4) {
+                Thread.sleep(1);
+            }
+            ts.cancel();
+
+            assertTrue(cleanup.await(5, TimeUnit.SECONDS));
+            assertEquals(4, ts.values().size());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void badRequest() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var sp = new SubmissionPublisher<Integer>();
+            var ts = new TestSubscriber<Integer>(0);
+
+            new FiberFlatMap<Integer, Integer>(sp, v -> new SubmissionPublisher<Integer>(), pool, 2, 4).subscribe(ts);
+
+            ts.request(0);
+
+            ts.awaitDone().assertError(IllegalArgumentException.class);
+            while (sp.hasSubscribers()) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
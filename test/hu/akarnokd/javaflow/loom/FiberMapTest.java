@@ -0,0 +1,185 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class FiberMapTest {
+
+    static Flow.Publisher<Integer> range(int start, int count) {
+        var source = new FiberPublisher<Integer>(emitter -> {
+            for (int i = start; i < start + count; i++) {
+                emitter.emit(i);
+            }
+        });
+        return s -> ForkJoinPool.commonPool().execute(() -> source.subscribe(s));
+    }
+
+    @Test(timeout = 10_000)
+    public void normal() throws Exception {
+        try (var pool = new VirtualThreadExecutorPool(1)) {
+            var ts = new TestSubscriber<String>();
+
+            new FiberMap<Integer, String>(range(1, 3), (value, emitter) -> {
+                emitter.emit("" + value);
+                emitter.emit("" + (value + 1));
+            }, pool, 16).subscribe(ts);
+
+            ts.awaitDone().assertResult(Arrays.asList("1", "2", "2", "3", "3", "4"));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void orderedConcurrent() throws Exception {
+        try (var pool = new VirtualThreadExecutorPool(2)) {
+            var ts = new TestSubscriber<Integer>();
+            var concurrency = new AtomicInteger();
+            var maxConcurrency = new AtomicInteger();
+
+            new FiberMap<Integer, Integer>(range(0, 20), (value, emitter) -> {
+                maxConcurrency.accumulateAndGet(concurrency.incrementAndGet(), Math::max);
+                Thread.sleep(20 - value);
+                concurrency.decrementAndGet();
+                emitter.emit(value);
+            }, pool, 8, 4, true).subscribe(ts);
+
+            var expected = new ArrayList<Integer>();
+            for (int i = 0; i < 20; i++) {
+                expected.add(i);
+            }
+            ts.awaitDone().assertResult(expected);
+
+            assertTrue("" + maxConcurrency.get(), maxConcurrency.get() <= 4);
+            assertTrue("" + maxConcurrency.get(), maxConcurrency.get() > 1);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void concurrentOnSingleCarrier() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var ts = new TestSubscriber<Integer>();
+            var concurrency = new AtomicInteger();
+            var maxConcurrency = new AtomicInteger();
+
+            new FiberMap<Integer, Integer>(range(0, 8), (value, emitter) -> {
+                maxConcurrency.accumulateAndGet(concurrency.incrementAndGet(), Math::max);
+                Thread.sleep(50);
+                concurrency.decrementAndGet();
+                emitter.emit(value);
+            }, pool, 8, 4, true).subscribe(ts);
+
+            ts.awaitDone().assertResult(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7));
+
+            assertTrue("" + maxConcurrency.get(), maxConcurrency.get() <= 4);
+            assertTrue("" + maxConcurrency.get(), maxConcurrency.get() > 1);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void unordered() throws Exception {
+        try (var pool = new VirtualThreadExecutorPool(2)) {
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberMap<Integer, Integer>(range(0, 4), (value, emitter) -> {
+                Thread.sleep(value == 0 ? 500 : 10);
+                emitter.emit(value);
+            }, pool, 8, 4, false).subscribe(ts);
+
+            ts.awaitDone();
+
+            var list = ts.values();
+            assertEquals(4, list.size());
+            assertEquals(0, list.get(3).intValue());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void backpressured() throws Exception {
+        try (var pool = new VirtualThreadExecutorPool(2)) {
+            var ts = new TestSubscriber<Integer>(0);
+
+            new FiberMap<Integer, Integer>(range(0, 10), (value, emitter) -> {
+                for (int i = 0; i < 10; i++) {
+                    emitter.emit(value * 10 + i);
+                }
+            }, pool, 2, 3, true).subscribe(ts);
+
+            for (int i = 0; i < 100; i++) {
+                Thread.sleep(1);
+                assertEquals(i, ts.values().size());
+                ts.request(1);
+                while (ts.values().size() != i + 1) {
+                    Thread.sleep(1);
+                }
+                assertEquals(i, ts.values().get(i).intValue());
+            }
+
+            ts.awaitDone();
+            assertEquals(1, ts.completions);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void mapperError() throws Exception {
+        try (var pool = new VirtualThreadExecutorPool(1)) {
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberMap<Integer, Integer>(range(0, 10), (value, emitter) -> {
+                if (value == 3) {
+                    throw new IllegalStateException("forced failure");
+                }
+                emitter.emit(value);
+            }, pool, 4).subscribe(ts);
+
+            ts.awaitDone().assertError(IllegalStateException.class);
+            assertEquals(Arrays.asList(0, 1, 2), ts.values());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void cancelStopsMapper() throws Exception {
+        try (var pool = new VirtualThreadExecutorPool(1)) {
+            var ts = new TestSubscriber<Integer>(5);
+            var cleanup = new CountDownLatch(1);
+
+            new FiberMap<Integer, Integer>(range(0, 1), (value, emitter) -> {
+                try {
+                    for (int i = 0; ; i++) {
+                        emitter.emit(i);
+                    }
+                } finally {
+                    cleanup.countDown();
+                }
+            }, pool, 4).subscribe(ts);
+
+            while (ts.values().size() != 5) {
+                Thread.sleep(1);
+            }
+            ts.cancel();
+
+            assertTrue(cleanup.await(5, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4), ts.values());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void badRequest() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var sp = new SubmissionPublisher<Integer>();
+            var ts = new TestSubscriber<Integer>(0);
+
+            new FiberMap<Integer, Integer>(sp, (v, emitter) -> emitter.emit(v), pool, 4).subscribe(ts);
+
+            ts.request(0);
+
+            ts.awaitDone().assertError(IllegalArgumentException.class);
+            while (sp.hasSubscribers()) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class FiberParallelTest {
+
+    static Flow.Publisher<Integer> range(int count) {
+        return new FiberPublisher<>(emitter -> {
+            for (int i = 0; i < count; i++) {
+                emitter.emit(i);
+            }
+        });
+    }
+
+    @Test(timeout = 10_000)
+    public void ordered() throws Exception {
+        try (var pool = new ParallelExecutorPool(4)) {
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberParallel<Integer, Integer>(range(10_000), (v, emitter) -> {
+                emitter.emit(v * 2);
+                emitter.emit(v * 2 + 1);
+            }, pool, 4, 16, true).subscribe(ts);
+
+            var expected = new ArrayList<Integer>();
+            for (int i = 0; i < 20_000; i++) {
+                expected.add(i);
+            }
+            ts.awaitDone().assertResult(expected);
+
+            // the rails close their workers right after the completion
+            for (int i = 0; i < 4; i++) {
+                while (pool.workers(i) != 0) {
+                    Thread.sleep(10);
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void arrivalOrder() throws Exception {
+        try (var pool = new ParallelExecutorPool(4)) {
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberParallel<Integer, Integer>(range(10_000), (v, emitter) -> {
+                if (v % 3 != 0) {
+                    emitter.emit(v);
+                }
+            }, pool, 4, 16, false).subscribe(ts);
+
+            ts.awaitDone();
+            var values = new TreeSet<>(ts.values());
+            assertEquals(ts.values().size(), values.size());
+            for (int i = 0; i < 10_000; i++) {
+                assertEquals(i % 3 != 0, values.contains(i));
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void allRailsUsed() throws Exception {
+        try (var pool = new ParallelExecutorPool(4)) {
+            var ts = new TestSubscriber<Integer>();
+            var workers = new int[4];
+
+            new FiberParallel<Integer, Integer>(range(1000), (v, emitter) -> {
+                if (v == 0) {
+                    // the rails hold on to their workers until they finish
+                    for (int i = 0; i < workers.length; i++) {
+                        workers[i] = pool.workers(i);
+                    }
+                }
+                emitter.emit(v);
+            }, pool, 4).subscribe(ts);
+
+            ts.awaitDone();
+            assertArrayEquals(new int[] { 1, 1, 1, 1 }, workers);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void backpressured() throws Exception {
+        try (var pool = new ParallelExecutorPool(2)) {
+            var ts = new TestSubscriber<Integer>(5);
+
+            new FiberSubscribeOnPublisher<>(new FiberParallel<Integer, Integer>(range(100), (v, emitter) -> emitter.emit(v),
+                    pool, 2, 4, true), pool).subscribe(ts);
+
+            Thread.sleep(100);
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4), ts.values());
+
+            ts.request(95);
+
+            ts.awaitDone();
+            assertEquals(100, ts.values().size());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void mapperError() throws Exception {
+        try (var pool = new ParallelExecutorPool(2)) {
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberParallel<Integer, Integer>(range(100), (v, emitter) -> {
+                if (v == 50) {
+                    throw new IllegalStateException("forced failure");
+                }
+                emitter.emit(v);
+            }, pool, 2).subscribe(ts);
+
+            ts.awaitDone().assertError(IllegalStateException.class);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void badRequest() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var sp = new SubmissionPublisher<Integer>();
+            var ts = new TestSubscriber<Integer>(0);
+
+            new FiberParallel<Integer, Integer>(sp, (v, emitter) -> emitter.emit(v), pool, 2).subscribe(ts);
+
+            ts.request(0);
+
+            ts.awaitDone().assertError(IllegalArgumentException.class);
+            while (sp.hasSubscribers()) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.atomic.*;
+
+import org.junit.Test;
+
+public class FiberPublisherTest {
+
+    @Test
+    public void singleStepConsume() {
+        var p = new FiberPublisher<Integer>(emitter -> {
+            for (int i = 0; i < 10; i++) {
+                emitter.emit(i);
+            }
+        });
+
+        var list = new ArrayList<Integer>();
+
+        p.subscribe(new Flow.Subscriber<Integer>() {
+
+            Subscription upstream;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                this.upstream = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Integer item) {
+                list.add(item);
+                upstream.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throwable.printStackTrace();
+            }
+
+            @Override
+            public void onComplete() {
+                System.out.println("Done");
+            }
+        });
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), list);
+    }
+
+    @Test(timeout = 30_000)
+    public void singleStepConsumeAsync() throws Exception {
+        int n = 100_000;
+        var p = new FiberPublisher<Integer>(emitter -> {
+            for (int i = 0; i < n; i++) {
+                emitter.emit(i);
+            }
+        });
+
+        var count = new AtomicInteger();
+
+        var exec = Executors.newSingleThreadExecutor();
+        try {
+            var cdl = new CountDownLatch(1);
+
+            p.subscribe(new Flow.Subscriber<Integer>() {
+
+                Subscription upstream;
+
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    this.upstream = subscription;
+                    exec.submit(() -> upstream.request(1));
+                }
+
+                @Override
+                public void onNext(Integer item) {
+                    if (count.getAndIncrement() != item) {
+                        onError(new IllegalStateException("Out of order: " + item));
+                    }
+                    exec.submit(() -> upstream.request(1));
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    throwable.printStackTrace();
+                    cdl.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                    cdl.countDown();
+                }
+            });
+
+            assertTrue(cdl.await(30, TimeUnit.SECONDS));
+        } finally {
+            exec.shutdown();
+        }
+
+        assertEquals(n, count.get());
+    }
+
+    @Test
+    public void singleStepAsyncCancel() throws Exception {
+        var cleanup = new CountDownLatch(1);
+        var p = new FiberPublisher<Integer>(emitter -> {
+            try {
+                for (int i = 0; i < 10; i++) {
+                    emitter.emit(i);
+                }
+            } finally {
+                cleanup.countDown();
+            }
+        });
+
+        var list = new ArrayList<Integer>();
+        var exec = Executors.newSingleThreadExecutor();
+        try {
+            p.subscribe(new Flow.Subscriber<Integer>() {
+
+                Subscription upstream;
+
+                @Override
+                public void onSubscribe(Subscription subscription) {
+                    this.upstream = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(Integer item) {
+                    list.add(item);
+                    if (item == 5) {
+                        exec.submit(() -> {
+                            Thread.sleep(200);
+                            upstream.cancel();
+                            return null;
+                        });
+                    } else {
+                        upstream.request(1);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    throwable.printStackTrace();
+                }
+
+                @Override
+                public void onComplete() {
+                    System.out.println("Done");
+                }
+            });
+
+            assertTrue(cleanup.await(5, TimeUnit.SECONDS));
+
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), list);
+        } finally {
+            exec.shutdown();
+        }
+    }
+}
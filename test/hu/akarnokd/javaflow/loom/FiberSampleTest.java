@@ -0,0 +1,51 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class FiberSampleTest {
+
+    @Test(timeout = 10_000)
+    public void sample() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var sp = new SubmissionPublisher<Integer>();
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberSample<>(sp, pool, 50, TimeUnit.MILLISECONDS).subscribe(ts);
+
+            sp.submit(1);
+            sp.submit(2);
+
+            while (ts.values().isEmpty()) {
+                Thread.sleep(5);
+            }
+            assertEquals(Arrays.asList(2), ts.values());
+
+            sp.submit(3);
+            sp.close();
+
+            ts.awaitDone().assertResult(Arrays.asList(2, 3));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void badRequest() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var sp = new SubmissionPublisher<Integer>();
+            var ts = new TestSubscriber<Integer>(0);
+
+            new FiberSample<>(sp, pool, 1, TimeUnit.MINUTES).subscribe(ts);
+
+            ts.request(0);
+
+            ts.awaitDone().assertError(IllegalArgumentException.class);
+            while (sp.hasSubscribers()) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
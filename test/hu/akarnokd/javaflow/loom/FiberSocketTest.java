@@ -0,0 +1,189 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class FiberSocketTest {
+
+    static final int N = 10_000;
+
+    static String expected() {
+        var sb = new StringBuilder();
+        for (int i = 0; i < N; i++) {
+            sb.append(i).append(',');
+        }
+        return sb.toString();
+    }
+
+    @Test(timeout = 10_000)
+    public void loopback() throws Exception {
+        try (var server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                var client = SocketChannel.open(server.getLocalAddress());
+                var accepted = server.accept();
+                var pool = new ParallelExecutorPool(2)) {
+
+            var source = new FiberPublisher<ByteBuffer>(emitter -> {
+                for (int i = 0; i < N; i++) {
+                    emitter.emit(ByteBuffer.wrap((i + ",").getBytes(StandardCharsets.US_ASCII)));
+                }
+            });
+
+            var writer = new FiberSocketSubscriber(client, pool, 16);
+            new FiberSubscribeOnPublisher<>(source, pool).subscribe(writer);
+            writer.completion().thenRun(() -> {
+                try {
+                    client.shutdownOutput();
+                } catch (Exception ex) {
+                    throw new CompletionException(ex);
+                }
+            });
+
+            var received = new ByteArrayOutputStream();
+            var done = new CountDownLatch(1);
+            new FiberSocketPublisher(accepted, pool, 256).subscribe(new Flow.Subscriber<ByteBuffer>() {
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(ByteBuffer item) {
+                    // the buffer is reused for the next read once onNext returns
+                    var bytes = new byte[item.remaining()];
+                    item.get(bytes);
+                    received.write(bytes, 0, bytes.length);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    throwable.printStackTrace();
+                }
+
+                @Override
+                public void onComplete() {
+                    done.countDown();
+                }
+            });
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            writer.completion().get(5, TimeUnit.SECONDS);
+            assertEquals(expected(), received.toString(StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void gatheringWrite() throws Exception {
+        var maxBatch = new AtomicLong();
+        FlowMetrics.install(new FlowMetrics() {
+            @Override
+            public void emitted(Class<?> source, ExecutorPool pool, long count) {
+                if (source == FiberSocketSubscriber.class) {
+                    maxBatch.accumulateAndGet(count, Math::max);
+                }
+            }
+
+            @Override
+            public void suspended(Class<?> source, ExecutorPool pool) {
+                // deliberately ignored
+            }
+
+            @Override
+            public void resumed(Class<?> source, ExecutorPool pool) {
+                // deliberately ignored
+            }
+
+            @Override
+            public void cancelled(Class<?> source, ExecutorPool pool) {
+                // deliberately ignored
+            }
+
+            @Override
+            public void parked(Class<?> source, ExecutorPool pool, long nanos) {
+                // deliberately ignored
+            }
+
+            @Override
+            public boolean isEnabled() {
+                return false;
+            }
+        });
+        try (var server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                var client = SocketChannel.open(server.getLocalAddress());
+                var accepted = server.accept();
+                var pool = new ParallelExecutorPool(1)) {
+
+            // keep the only executor busy so the buffers queue up before the writer fiber starts
+            var blocker = pool.worker();
+            var release = new CountDownLatch(1);
+            blocker.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            var writer = new FiberSocketSubscriber(client, pool, 16);
+            writer.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    // deliberately ignored
+                }
+
+                @Override
+                public void cancel() {
+                    // deliberately ignored
+                }
+            });
+            for (int i = 0; i < 8; i++) {
+                writer.onNext(ByteBuffer.wrap(new byte[] { (byte)i }));
+            }
+            writer.onComplete();
+            release.countDown();
+            blocker.close();
+
+            writer.completion().get(5, TimeUnit.SECONDS);
+            assertEquals(8, maxBatch.get());
+
+            var received = ByteBuffer.allocate(8);
+            while (received.hasRemaining()) {
+                accepted.read(received);
+            }
+            assertArrayEquals(new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 }, received.array());
+        } finally {
+            FlowMetrics.install(null);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void writerUpstreamError() throws Exception {
+        try (var server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                var client = SocketChannel.open(server.getLocalAddress());
+                var pool = new ParallelExecutorPool(1)) {
+
+            var source = new FiberPublisher<ByteBuffer>(emitter -> {
+                throw new IllegalStateException("forced failure");
+            });
+
+            var writer = new FiberSocketSubscriber(client, pool);
+            source.subscribe(writer);
+
+            try {
+                writer.completion().get(5, TimeUnit.SECONDS);
+                fail("Should have thrown");
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class FiberSubscribeOnPublisherTest {
+
+    @Test(timeout = 10_000)
+    public void doesNotBlockSubscriber() throws Exception {
+        var source = new FiberPublisher<Integer>(emitter -> {
+            for (int i = 0; i < 5; i++) {
+                emitter.emit(i);
+            }
+        });
+
+        try (var pool = new ParallelExecutorPool(1)) {
+            var ts = new TestSubscriber<Integer>(0);
+
+            new FiberSubscribeOnPublisher<>(source, pool).subscribe(ts);
+
+            // the generator is suspended on the fiber, not on this thread
+            assertEquals(1, pool.workers(0));
+            assertTrue(ts.values().isEmpty());
+
+            ts.request(5);
+
+            ts.awaitDone().assertResult(Arrays.asList(0, 1, 2, 3, 4));
+
+            assertEquals(0, pool.workers(0));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void cancelReleasesWorker() throws Exception {
+        var cleanup = new CountDownLatch(1);
+        var source = new FiberPublisher<Integer>(emitter -> {
+            try {
+                for (int i = 0; ; i++) {
+                    emitter.emit(i);
+                }
+            } finally {
+                cleanup.countDown();
+            }
+        });
+
+        try (var pool = new ParallelExecutorPool(1)) {
+            var ts = new TestSubscriber<Integer>(3);
+
+            new FiberSubscribeOnPublisher<>(source, pool).subscribe(ts);
+
+            while (ts.values().size() != 3) {
+                Thread.sleep(1);
+            }
+
+            ts.cancel();
+
+            assertTrue(cleanup.await(5, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList(0, 1, 2), ts.values());
+            assertEquals(0, pool.workers(0));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void error() throws Exception {
+        var source = new FiberPublisher<Integer>(emitter -> {
+            emitter.emit(1);
+            throw new IllegalStateException("forced failure");
+        });
+
+        try (var pool = new VirtualThreadExecutorPool(1)) {
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberSubscribeOnPublisher<>(source, pool).subscribe(ts);
+
+            ts.awaitDone().assertError(IllegalStateException.class);
+            assertEquals(Arrays.asList(1), ts.values());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class FiberThrottleLatestTest {
+
+    @Test(timeout = 10_000)
+    public void throttle() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var sp = new SubmissionPublisher<Integer>();
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberThrottleLatest<>(sp, pool, 100, TimeUnit.MILLISECONDS).subscribe(ts);
+
+            sp.submit(1);
+            while (ts.values().isEmpty()) {
+                Thread.sleep(5);
+            }
+            // within the period, only the latest is kept
+            sp.submit(2);
+            sp.submit(3);
+
+            while (ts.values().size() != 2) {
+                Thread.sleep(5);
+            }
+            assertEquals(Arrays.asList(1, 3), ts.values());
+
+            sp.submit(4);
+            sp.close();
+
+            ts.awaitDone().assertResult(Arrays.asList(1, 3, 4));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void badRequest() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var sp = new SubmissionPublisher<Integer>();
+            var ts = new TestSubscriber<Integer>(0);
+
+            new FiberThrottleLatest<>(sp, pool, 1, TimeUnit.MINUTES).subscribe(ts);
+
+            ts.request(0);
+
+            ts.awaitDone().assertError(IllegalArgumentException.class);
+            while (sp.hasSubscribers()) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class FiberTimeoutTest {
+
+    @Test(timeout = 10_000)
+    public void noTimeout() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberTimeout<>(new FiberPublisher<Integer>(emitter -> {
+                for (int i = 0; i < 5; i++) {
+                    emitter.emit(i);
+                    Thread.sleep(10);
+                }
+            }), pool, 1, TimeUnit.SECONDS).subscribe(ts);
+
+            ts.awaitDone().assertResult(Arrays.asList(0, 1, 2, 3, 4));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void timeoutBetweenItems() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var sp = new SubmissionPublisher<Integer>();
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberTimeout<>(sp, pool, 50, TimeUnit.MILLISECONDS).subscribe(ts);
+
+            sp.submit(1);
+            sp.submit(2);
+
+            ts.awaitDone().assertError(TimeoutException.class);
+            assertEquals(Arrays.asList(1, 2), ts.values());
+            assertFalse(sp.hasSubscribers());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void timeoutBeforeFirstItem() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var ts = new TestSubscriber<Integer>();
+
+            new FiberTimeout<>(new SubmissionPublisher<Integer>(), pool, 20, TimeUnit.MILLISECONDS).subscribe(ts);
+
+            ts.awaitDone().assertError(TimeoutException.class);
+            assertTrue(ts.values().isEmpty());
+        }
+    }
+}
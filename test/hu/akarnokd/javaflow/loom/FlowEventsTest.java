@@ -0,0 +1,92 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.*;
+
+public class FlowEventsTest {
+
+    static List<RecordedEvent> record(String eventName, Callable<?> action) throws Exception {
+        return record(action, eventName);
+    }
+
+    static List<RecordedEvent> record(Callable<?> action, String... eventNames) throws Exception {
+        var file = Files.createTempFile("flowevents", ".jfr");
+        try {
+            try (var recording = new Recording()) {
+                for (var eventName : eventNames) {
+                    recording.enable(eventName).withThreshold(java.time.Duration.ZERO);
+                }
+                recording.start();
+                action.call();
+                recording.stop();
+                recording.dump(file);
+            }
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void generatorSuspendResume() throws Exception {
+        var exec = Executors.newSingleThreadExecutor();
+        try {
+            var events = record("hu.akarnokd.javaflow.loom.GeneratorSuspend", () -> {
+                var ts = new TestSubscriber<Integer>(0L);
+                var source = new FiberPublisher<Integer>(emitter -> {
+                    emitter.emit(1);
+                });
+                exec.submit(() -> source.subscribe(ts));
+                Thread.sleep(50);
+                ts.request(1);
+                return ts.awaitDone();
+            });
+
+            assertFalse(events.isEmpty());
+            var event = events.get(0);
+            assertEquals(FiberPublisher.class.getName(), event.getClass("source").getName());
+            assertNotNull(event.getStackTrace());
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void selectorWait() throws Exception {
+        @SuppressWarnings("unchecked")
+        var selector = new BlockingQueueSelector<Integer>(new BlockingQueue[] { new LinkedBlockingQueue<Integer>() });
+
+        var events = record("hu.akarnokd.javaflow.loom.SelectorWait",
+                () -> selector.poll(20, TimeUnit.MILLISECONDS));
+
+        assertEquals(1, events.size());
+        assertEquals(1, events.get(0).getInt("queues"));
+        assertTrue(events.get(0).getBoolean("timedOut"));
+    }
+
+    @Test(timeout = 10_000)
+    public void workerAcquireRelease() throws Exception {
+        try (var pool = new ParallelExecutorPool(2)) {
+            var events = record(() -> {
+                pool.worker().close();
+                return null;
+            }, "hu.akarnokd.javaflow.loom.WorkerAcquire", "hu.akarnokd.javaflow.loom.WorkerRelease");
+
+            var names = new ArrayList<String>();
+            for (var event : events) {
+                names.add(event.getEventType().getName());
+                assertEquals(ParallelExecutorPool.class.getName(), event.getClass("pool").getName());
+            }
+            Collections.sort(names);
+            assertEquals(Arrays.asList("hu.akarnokd.javaflow.loom.WorkerAcquire", "hu.akarnokd.javaflow.loom.WorkerRelease"), names);
+        }
+    }
+}
@@ -1,19 +1,40 @@
 package hu.akarnokd.javaflow.loom;
 
+import static org.junit.Assert.*;
+
 import java.util.concurrent.*;
 
-import org.junit.*;
+import org.junit.Test;
 
 public class HandoverTest {
 
     @Test(timeout = 5000)
-    @Ignore("Doesn't work, one needs to call get()/emit() in the right scope")
     public void basic() throws Exception {
         var h = new Handover<Integer>();
         var n = 1_000_000;
 
         ForkJoinTask<?> t = ForkJoinPool.commonPool().submit(() -> {
             while (h.get().intValue() != n) { }
+            return null;
+        });
+
+        for (int i = 1; i <= n; i++) {
+            h.emit(i);
+        }
+
+        t.join();
+    }
+
+    @Test(timeout = 10_000)
+    public void parkOnly() throws Exception {
+        var h = new Handover<Integer>(0, 0);
+        var n = 100_000;
+
+        ForkJoinTask<?> t = ForkJoinPool.commonPool().submit(() -> {
+            for (int i = 1; i <= n; i++) {
+                assertEquals(i, h.get().intValue());
+            }
+            return null;
         });
 
         for (int i = 1; i <= n; i++) {
@@ -21,5 +42,6 @@ public class HandoverTest {
         }
 
         t.join();
+        assertNull(h.poll());
     }
 }
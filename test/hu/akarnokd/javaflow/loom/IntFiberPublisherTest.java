@@ -0,0 +1,147 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class IntFiberPublisherTest {
+
+    @Test(timeout = 10_000)
+    public void chunks() throws Exception {
+        var ts = new TestSubscriber<int[]>(Long.MAX_VALUE);
+
+        new IntFiberPublisher(emitter -> {
+            for (int i = 0; i < 10; i++) {
+                emitter.emit(i);
+            }
+        }, 4).subscribe(ts);
+
+        ts.awaitDone();
+
+        var chunks = ts.values();
+        assertEquals(3, chunks.size());
+        assertArrayEquals(new int[] { 0, 1, 2, 3 }, chunks.get(0));
+        assertArrayEquals(new int[] { 4, 5, 6, 7 }, chunks.get(1));
+        assertArrayEquals(new int[] { 8, 9 }, chunks.get(2));
+    }
+
+    @Test(timeout = 10_000)
+    public void iterate() throws Exception {
+        var source = new IntFiberPublisher(emitter -> {
+            for (int i = 0; i < 1000; i++) {
+                emitter.emit(i);
+            }
+        }, 16);
+        try (var pool = new SingleExecutorPool();
+                var iter = new IntFiberConsumer(new FiberSubscribeOnPublisher<>(source, pool)).iterator(4)) {
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(iter.hasNext());
+                assertEquals(i, iter.nextInt());
+            }
+            assertFalse(iter.hasNext());
+            try {
+                iter.nextInt();
+                fail("Should have thrown");
+            } catch (NoSuchElementException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void iterateHandover() throws Exception {
+        var source = new IntFiberPublisher(emitter -> {
+            for (int i = 0; i < 100; i++) {
+                emitter.emit(i);
+            }
+        }, 8);
+        try (var pool = new SingleExecutorPool();
+                var iter = new IntFiberConsumer(new FiberSubscribeOnPublisher<>(source, pool)).iterator()) {
+            var sum = 0;
+            while (iter.hasNext()) {
+                sum += iter.nextInt();
+            }
+            assertEquals(4950, sum);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void errorAfterPartialChunk() throws Exception {
+        var ts = new TestSubscriber<int[]>(Long.MAX_VALUE);
+
+        new IntFiberPublisher(emitter -> {
+            for (int i = 0; i < 6; i++) {
+                emitter.emit(i);
+            }
+            throw new IllegalStateException("forced failure");
+        }, 4).subscribe(ts);
+
+        ts.awaitDone().assertError(IllegalStateException.class);
+
+        var chunks = ts.values();
+        assertEquals(2, chunks.size());
+        assertArrayEquals(new int[] { 0, 1, 2, 3 }, chunks.get(0));
+        assertArrayEquals(new int[] { 4, 5 }, chunks.get(1));
+    }
+
+    @Test(timeout = 10_000)
+    public void earlyClose() throws Exception {
+        var cancelled = new CountDownLatch(1);
+        var source = new IntFiberPublisher(emitter -> {
+            try {
+                for (int i = 0; ; i++) {
+                    emitter.emit(i);
+                }
+            } finally {
+                cancelled.countDown();
+            }
+        }, 8);
+        try (var pool = new SingleExecutorPool()) {
+            try (var iter = new IntFiberConsumer(new FiberSubscribeOnPublisher<>(source, pool)).iterator()) {
+                for (int i = 0; i < 20; i++) {
+                    assertEquals(i, iter.nextInt());
+                }
+            }
+
+            assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void continuationErrorAfterPartialChunk() throws Exception {
+        var ts = new TestSubscriber<int[]>(Long.MAX_VALUE);
+
+        new IntContinuationPublisher(emitter -> {
+            for (int i = 0; i < 3; i++) {
+                emitter.accept(i);
+            }
+            throw new IllegalStateException("forced failure");
+        }, 2).subscribe(ts);
+
+        ts.awaitDone().assertError(IllegalStateException.class);
+
+        var chunks = ts.values();
+        assertEquals(2, chunks.size());
+        assertArrayEquals(new int[] { 0, 1 }, chunks.get(0));
+        assertArrayEquals(new int[] { 2 }, chunks.get(1));
+    }
+
+    @Test(timeout = 10_000)
+    public void continuationFused() throws Exception {
+        var source = new IntContinuationPublisher(emitter -> {
+            for (int i = 0; i < 5; i++) {
+                emitter.accept(i);
+            }
+        }, 2);
+
+        try (var iter = new IntFiberConsumer(source).iterator()) {
+            for (int i = 0; i < 5; i++) {
+                assertEquals(i, iter.nextInt());
+            }
+            assertFalse(iter.hasNext());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class LongAdderFlowMetricsTest {
+
+    @Test
+    public void noopByDefault() {
+        assertSame(FlowMetrics.noop(), FlowMetrics.current());
+        assertFalse(FlowMetrics.noop().isEnabled());
+    }
+
+    @Test(timeout = 10_000)
+    public void fiberPublisherBackpressured() throws Exception {
+        var metrics = new LongAdderFlowMetrics();
+        FlowMetrics.install(metrics);
+        var exec = Executors.newSingleThreadExecutor();
+        try {
+            var ts = new TestSubscriber<Integer>(0L);
+            var source = new FiberPublisher<Integer>(emitter -> {
+                for (int i = 0; i < 5; i++) {
+                    emitter.emit(i);
+                }
+            });
+            exec.submit(() -> source.subscribe(ts));
+
+            for (int i = 1; i <= 5; i++) {
+                while (ts.values().size() != i) {
+                    Thread.sleep(1);
+                    ts.request(1);
+                    Thread.sleep(1);
+                }
+            }
+            ts.awaitDone();
+
+            var c = metrics.counters(FiberPublisher.class);
+            assertEquals(5, c.emitted());
+            assertTrue(c.toString(), c.suspended() >= 1);
+            assertEquals(c.suspended(), c.parks());
+            assertTrue(c.toString(), c.parkedNanos() > 0L);
+            assertEquals(0, c.cancelled());
+        } finally {
+            FlowMetrics.install(null);
+            exec.shutdown();
+        }
+        assertSame(FlowMetrics.noop(), FlowMetrics.current());
+    }
+
+    @Test(timeout = 10_000)
+    public void fiberConsumerCancelled() throws Exception {
+        var metrics = new LongAdderFlowMetrics();
+        FlowMetrics.install(metrics);
+        var exec = Executors.newSingleThreadExecutor();
+        try {
+            var source = new FiberPublisher<Integer>(emitter -> {
+                for (int i = 0; ; i++) {
+                    emitter.emit(i);
+                }
+            });
+            var async = (Flow.Publisher<Integer>)s -> exec.submit(() -> source.subscribe(s));
+
+            try (var iter = new FiberConsumer<>(async).iterator(8)) {
+                for (int i = 0; i < 20; i++) {
+                    assertEquals(i, iter.next().intValue());
+                }
+            }
+
+            assertEquals(1, metrics.counters(FiberConsumer.class).cancelled());
+            assertEquals(1, metrics.counters(FiberPublisher.class).cancelled());
+            assertTrue(metrics.counters(FiberConsumer.class).emitted() >= 20);
+        } finally {
+            FlowMetrics.install(null);
+            exec.shutdown();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void perPool() throws Exception {
+        var metrics = new LongAdderFlowMetrics();
+        FlowMetrics.install(metrics);
+        try (var pool = new SingleExecutorPool()) {
+            var ts = new TestSubscriber<Integer>();
+            new FiberMap<Integer, Integer>(new FiberPublisher<>(emitter -> {
+                for (int i = 0; i < 10; i++) {
+                    emitter.emit(i);
+                }
+            }), (v, emitter) -> emitter.emit(v + 1), pool, 4).subscribe(ts);
+
+            ts.awaitDone();
+
+            assertEquals(10, metrics.counters(FiberMap.class).emitted());
+            assertEquals(10, metrics.counters(pool).emitted());
+        } finally {
+            FlowMetrics.install(null);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void poolCountersDropped() throws Exception {
+        var metrics = new LongAdderFlowMetrics();
+        var pool = new SingleExecutorPool();
+        metrics.emitted(FiberMap.class, pool, 5);
+        assertEquals(5, metrics.counters(pool).emitted());
+        pool.close();
+        pool = null;
+
+        while (!metrics.pools.isEmpty()) {
+            System.gc();
+            Thread.sleep(10);
+            metrics.expungeCollectedPools();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class LongFiberPublisherTest {
+
+    @Test(timeout = 10_000)
+    public void chunks() throws Exception {
+        var ts = new TestSubscriber<long[]>(Long.MAX_VALUE);
+
+        new LongFiberPublisher(emitter -> {
+            for (long i = 0; i < 10; i++) {
+                emitter.emit(i);
+            }
+        }, 4).subscribe(ts);
+
+        ts.awaitDone();
+
+        var chunks = ts.values();
+        assertEquals(3, chunks.size());
+        assertArrayEquals(new long[] { 0, 1, 2, 3 }, chunks.get(0));
+        assertArrayEquals(new long[] { 4, 5, 6, 7 }, chunks.get(1));
+        assertArrayEquals(new long[] { 8, 9 }, chunks.get(2));
+    }
+
+    @Test(timeout = 10_000)
+    public void iterate() throws Exception {
+        var source = new LongFiberPublisher(emitter -> {
+            for (long i = 0; i < 1000; i++) {
+                emitter.emit(i);
+            }
+        }, 16);
+        var exec = Executors.newSingleThreadExecutor();
+        try {
+            var async = (Flow.Publisher<long[]>)s -> exec.submit(() -> source.subscribe(s));
+
+            try (var iter = new LongFiberConsumer(async).iterator(4)) {
+                for (long i = 0; i < 1000; i++) {
+                    assertTrue(iter.hasNext());
+                    assertEquals(i, iter.nextLong());
+                }
+                assertFalse(iter.hasNext());
+            }
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void earlyClose() throws Exception {
+        var cancelled = new CountDownLatch(1);
+        var source = new LongFiberPublisher(emitter -> {
+            try {
+                for (long i = 0; ; i++) {
+                    emitter.emit(i);
+                }
+            } finally {
+                cancelled.countDown();
+            }
+        }, 8);
+        var exec = Executors.newSingleThreadExecutor();
+        try {
+            var async = (Flow.Publisher<long[]>)s -> exec.submit(() -> source.subscribe(s));
+
+            try (var iter = new LongFiberConsumer(async).iterator()) {
+                for (long i = 0; i < 20; i++) {
+                    assertEquals(i, iter.nextLong());
+                }
+            }
+
+            assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void errorAfterPartialChunk() throws Exception {
+        var ts = new TestSubscriber<long[]>(Long.MAX_VALUE);
+
+        new LongFiberPublisher(emitter -> {
+            for (long i = 0; i < 6; i++) {
+                emitter.emit(i);
+            }
+            throw new IllegalStateException("forced failure");
+        }, 4).subscribe(ts);
+
+        ts.awaitDone().assertError(IllegalStateException.class);
+
+        var chunks = ts.values();
+        assertEquals(2, chunks.size());
+        assertArrayEquals(new long[] { 0, 1, 2, 3 }, chunks.get(0));
+        assertArrayEquals(new long[] { 4, 5 }, chunks.get(1));
+    }
+
+    @Test(timeout = 10_000)
+    public void continuationErrorAfterPartialChunk() throws Exception {
+        var ts = new TestSubscriber<long[]>(Long.MAX_VALUE);
+
+        new LongContinuationPublisher(emitter -> {
+            for (long i = 0; i < 3; i++) {
+                emitter.accept(i);
+            }
+            throw new IllegalStateException("forced failure");
+        }, 2).subscribe(ts);
+
+        ts.awaitDone().assertError(IllegalStateException.class);
+
+        var chunks = ts.values();
+        assertEquals(2, chunks.size());
+        assertArrayEquals(new long[] { 0, 1 }, chunks.get(0));
+        assertArrayEquals(new long[] { 2 }, chunks.get(1));
+    }
+
+    @Test(timeout = 10_000)
+    public void intContinuation() throws Exception {
+        var ts = new TestSubscriber<int[]>(Long.MAX_VALUE);
+
+        new IntContinuationPublisher(emitter -> {
+            for (int i = 0; i < 5; i++) {
+                emitter.accept(i);
+            }
+        }, 2).subscribe(ts);
+
+        ts.awaitDone();
+
+        var chunks = ts.values();
+        assertEquals(3, chunks.size());
+        assertArrayEquals(new int[] { 0, 1 }, chunks.get(0));
+        assertArrayEquals(new int[] { 2, 3 }, chunks.get(1));
+        assertArrayEquals(new int[] { 4 }, chunks.get(2));
+    }
+}
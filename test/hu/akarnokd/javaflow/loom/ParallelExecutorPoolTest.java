@@ -0,0 +1,74 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+import hu.akarnokd.javaflow.loom.ParallelExecutorPool.Assignment;
+
+public class ParallelExecutorPoolTest {
+
+    @Test
+    public void roundRobin() {
+        try (var pool = new ParallelExecutorPool(3)) {
+            for (int i = 0; i < 7; i++) {
+                pool.worker();
+            }
+
+            assertEquals(3, pool.workers(0));
+            assertEquals(2, pool.workers(1));
+            assertEquals(2, pool.workers(2));
+        }
+    }
+
+    @Test
+    public void leastWorkers() {
+        try (var pool = new ParallelExecutorPool(3, Assignment.LEAST_WORKERS)) {
+            var w0 = pool.worker();
+            pool.worker();
+            pool.worker();
+
+            w0.close();
+            w0.close();
+
+            assertEquals(0, pool.workers(0));
+
+            pool.worker();
+
+            assertEquals(1, pool.workers(0));
+            assertEquals(1, pool.workers(1));
+            assertEquals(1, pool.workers(2));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void twoChoices() throws Exception {
+        try (var pool = new ParallelExecutorPool(2, Assignment.TWO_CHOICES)) {
+            var block = new CountDownLatch(1);
+            var busy = pool.executors[0].service;
+            busy.execute(() -> {
+                try {
+                    block.await();
+                } catch (InterruptedException ex) {
+                    // ignored
+                }
+            });
+            for (int i = 0; i < 10; i++) {
+                busy.execute(() -> { });
+            }
+
+            assertEquals(10, pool.queueDepth(0));
+
+            for (int i = 0; i < 10; i++) {
+                pool.worker();
+            }
+
+            assertEquals(0, pool.workers(0));
+            assertEquals(10, pool.workers(1));
+
+            block.countDown();
+        }
+    }
+}
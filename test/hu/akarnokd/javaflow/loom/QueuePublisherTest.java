@@ -0,0 +1,140 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class QueuePublisherTest {
+
+    static final Integer END = -1;
+
+    @Test(timeout = 10_000)
+    public void prefilled() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var queue = new ArrayBlockingQueue<Integer>(16);
+            for (int i = 0; i < 10; i++) {
+                queue.add(i);
+            }
+            queue.add(END);
+            var ts = new TestSubscriber<Integer>();
+
+            new QueuePublisher<>(queue, pool, END, 4).subscribe(ts);
+
+            ts.awaitDone().assertResult(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void waitsForItems() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var queue = new LinkedBlockingQueue<Integer>();
+            var ts = new TestSubscriber<Integer>();
+
+            new QueuePublisher<>(queue, pool, END).subscribe(ts);
+
+            queue.put(1);
+            while (ts.values().isEmpty()) {
+                Thread.sleep(10);
+            }
+            queue.put(2);
+            queue.put(END);
+
+            ts.awaitDone().assertResult(Arrays.asList(1, 2));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void backpressured() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var queue = new ArrayBlockingQueue<Integer>(16);
+            for (int i = 0; i < 5; i++) {
+                queue.add(i);
+            }
+            queue.add(END);
+            var ts = new TestSubscriber<Integer>(2);
+
+            new QueuePublisher<>(queue, pool, END).subscribe(ts);
+
+            while (ts.values().size() != 2) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50);
+            assertEquals(Arrays.asList(0, 1), ts.values());
+            assertEquals(4, queue.size());
+
+            ts.request(10);
+
+            ts.awaitDone().assertResult(Arrays.asList(0, 1, 2, 3, 4));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void cancelWhileTaking() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var queue = new LinkedBlockingQueue<Integer>();
+            var ts = new TestSubscriber<Integer>();
+
+            new QueuePublisher<>(queue, pool, END).subscribe(ts);
+
+            Thread.sleep(50);
+            ts.cancel();
+
+            while (pool.workers(0) != 0) {
+                Thread.sleep(10);
+            }
+            assertTrue(ts.values().isEmpty());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void badRequest() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var ts = new TestSubscriber<Integer>(0);
+
+            new QueuePublisher<>(new LinkedBlockingQueue<Integer>(), pool, END).subscribe(ts);
+
+            ts.request(0);
+
+            ts.awaitDone().assertError(IllegalArgumentException.class);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void crashingOnNext() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var queue = new LinkedBlockingQueue<Integer>();
+            queue.add(1);
+            var error = new CompletableFuture<Throwable>();
+
+            new QueuePublisher<>(queue, pool, END).subscribe(new Flow.Subscriber<Integer>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(Integer item) {
+                    throw new IllegalStateException("forced failure");
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    error.complete(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    error.complete(null);
+                }
+            });
+
+            assertTrue(error.get(5, TimeUnit.SECONDS) instanceof IllegalStateException);
+            while (pool.workers(0) != 0) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+public class QueueSubscriberTest {
+
+    static final Integer END = -1;
+
+    static Flow.Publisher<Integer> range(int count) {
+        return new FiberPublisher<>(emitter -> {
+            for (int i = 0; i < count; i++) {
+                emitter.emit(i);
+            }
+        });
+    }
+
+    @Test(timeout = 10_000)
+    public void boundedQueue() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var queue = new ArrayBlockingQueue<Integer>(8);
+
+            new FiberSubscribeOnPublisher<>(range(1000), pool).subscribe(new QueueSubscriber<>(queue, END));
+
+            var list = new ArrayList<Integer>();
+            for (;;) {
+                var v = queue.take();
+                if (v == END) {
+                    break;
+                }
+                list.add(v);
+            }
+            assertEquals(1000, list.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, list.get(i).intValue());
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void error() throws Exception {
+        var queue = new LinkedBlockingQueue<Integer>();
+        var qs = new QueueSubscriber<>(queue, END);
+
+        new FiberPublisher<Integer>(emitter -> {
+            emitter.emit(1);
+            throw new Exception("forced failure");
+        }).subscribe(qs);
+
+        assertEquals(1, queue.take().intValue());
+        assertSame(END, queue.take());
+        assertEquals("forced failure", qs.error().getMessage());
+    }
+
+    @Test(timeout = 10_000)
+    public void roundTrip() throws Exception {
+        try (var pool = new ParallelExecutorPool(2)) {
+            var queue = new ArrayBlockingQueue<Integer>(16);
+
+            new FiberSubscribeOnPublisher<>(range(500), pool).subscribe(new QueueSubscriber<>(queue, END));
+
+            var ts = new TestSubscriber<Integer>();
+            new QueuePublisher<>(queue, pool, END, 5).subscribe(ts);
+
+            ts.awaitDone();
+            assertEquals(500, ts.values().size());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void interruptedPutEnds() throws Exception {
+        var queue = new ArrayBlockingQueue<Integer>(1);
+        var qs = new QueueSubscriber<>(queue, END);
+        var cancelled = new CountDownLatch(1);
+
+        var producer = new Thread(() -> {
+            qs.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    // deliberately ignored
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled.countDown();
+                }
+            });
+            qs.onNext(1);
+            qs.onNext(2);
+        });
+        producer.start();
+
+        while (producer.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+        producer.interrupt();
+
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+        assertEquals(1, queue.take().intValue());
+        assertSame(END, queue.take());
+        producer.join();
+        assertTrue(qs.error() instanceof InterruptedException);
+    }
+}
@@ -0,0 +1,39 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.lang.invoke.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class RequestsTest {
+
+    @Test
+    public void addCap() {
+        var requested = new AtomicLong();
+
+        assertEquals(0L, Requests.addCap(requested, 5));
+        assertEquals(5L, Requests.addCap(requested, Long.MAX_VALUE - 1));
+        assertEquals(Long.MAX_VALUE, requested.get());
+        assertEquals(Long.MAX_VALUE, Requests.addCap(requested, 1));
+        assertEquals(Long.MAX_VALUE, requested.get());
+    }
+
+    volatile long requested;
+
+    @Test
+    public void addCapVarHandle() throws Exception {
+        var handle = MethodHandles.lookup().findVarHandle(RequestsTest.class, "requested", long.class);
+
+        assertEquals(0L, Requests.addCap(handle, this, 5));
+        assertEquals(5L, Requests.addCap(handle, this, Long.MAX_VALUE - 1));
+        assertEquals(Long.MAX_VALUE, requested);
+        assertEquals(Long.MAX_VALUE, Requests.addCap(handle, this, 1));
+    }
+
+    @Test
+    public void badRequest() {
+        assertTrue(Requests.badRequest(-1).getMessage().endsWith("but it was -1"));
+    }
+}
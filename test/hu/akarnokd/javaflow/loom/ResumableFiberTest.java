@@ -0,0 +1,98 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class ResumableFiberTest {
+
+    @Test(timeout = 10_000)
+    public void pingPong() throws Exception {
+        var producerReady = new ResumableFiber();
+        var queue = new ConcurrentLinkedQueue<Integer>();
+        var done = new AtomicBoolean();
+        var n = 100_000;
+
+        ForkJoinTask<?> t = ForkJoinPool.commonPool().submit(() -> {
+            for (int i = 0; i < n; i++) {
+                queue.offer(i);
+                producerReady.resume();
+            }
+            done.set(true);
+            producerReady.resume();
+        });
+
+        var expected = 0;
+        for (;;) {
+            var d = done.get();
+            var v = queue.poll();
+            if (v != null) {
+                assertEquals(expected++, v.intValue());
+                continue;
+            }
+            if (d) {
+                break;
+            }
+            producerReady.await();
+        }
+
+        t.join();
+        assertEquals(n, expected);
+    }
+
+    @Test(timeout = 10_000)
+    public void resumeCoalesces() throws Exception {
+        var r = new ResumableFiber();
+
+        r.resume();
+        r.resume();
+
+        assertTrue(r.tryAwait());
+        assertFalse(r.tryAwait());
+    }
+
+    @Test(timeout = 10_000)
+    public void multipleResumers() throws Exception {
+        var r = new ResumableFiber();
+        var exec = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 1000; round++) {
+                var latch = new CountDownLatch(1);
+                for (int i = 0; i < 4; i++) {
+                    exec.execute(() -> {
+                        try {
+                            latch.await();
+                        } catch (InterruptedException ex) {
+                            return;
+                        }
+                        r.resume();
+                    });
+                }
+                latch.countDown();
+                r.await();
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void interrupted() throws Exception {
+        var r = new ResumableFiber();
+
+        Thread.currentThread().interrupt();
+        try {
+            r.await();
+            fail("Should have thrown");
+        } catch (InterruptedException expected) {
+            // expected
+        }
+
+        assertNull(r.get());
+        r.resume();
+        r.await();
+    }
+}
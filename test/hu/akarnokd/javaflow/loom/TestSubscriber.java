@@ -0,0 +1,93 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.Flow.*;
+
+/**
+ * Records the signals it receives and requests a fixed amount upfront.
+ * @param <T> the element type
+ */
+final class TestSubscriber<T> implements Subscriber<T> {
+
+    final long initialRequest;
+
+    final List<T> values;
+
+    final CountDownLatch done;
+
+    volatile Subscription upstream;
+
+    volatile Throwable error;
+
+    volatile int completions;
+
+    TestSubscriber() {
+        this(Long.MAX_VALUE);
+    }
+
+    TestSubscriber(long initialRequest) {
+        this.initialRequest = initialRequest;
+        this.values = Collections.synchronizedList(new ArrayList<>());
+        this.done = new CountDownLatch(1);
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        this.upstream = subscription;
+        if (initialRequest != 0L) {
+            subscription.request(initialRequest);
+        }
+    }
+
+    @Override
+    public void onNext(T item) {
+        values.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+        completions++;
+        done.countDown();
+    }
+
+    void request(long n) {
+        upstream.request(n);
+    }
+
+    void cancel() {
+        upstream.cancel();
+    }
+
+    List<T> values() {
+        synchronized (values) {
+            return new ArrayList<>(values);
+        }
+    }
+
+    TestSubscriber<T> awaitDone() throws InterruptedException {
+        assertTrue("Timeout", done.await(10, TimeUnit.SECONDS));
+        return this;
+    }
+
+    TestSubscriber<T> assertResult(List<T> expected) {
+        assertNull(error);
+        assertEquals(expected, values());
+        assertEquals(1, completions);
+        return this;
+    }
+
+    TestSubscriber<T> assertError(Class<? extends Throwable> clazz) {
+        assertTrue("" + error, clazz.isInstance(error));
+        assertEquals(0, completions);
+        return this;
+    }
+}
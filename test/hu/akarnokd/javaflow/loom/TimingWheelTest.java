@@ -0,0 +1,125 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+    @Test(timeout = 10_000)
+    public void sharedPerPool() {
+        try (var pool = new ParallelExecutorPool(1)) {
+            assertSame(TimingWheel.of(pool), TimingWheel.of(pool));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void fires() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var latch = new CountDownLatch(1);
+            var timer = TimingWheel.timer(pool, latch::countDown, Runnable::run);
+
+            var start = System.nanoTime();
+            timer.schedule(TimeUnit.MILLISECONDS.toNanos(20));
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+            assertFalse(timer.isScheduled());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void cancelAndReuse() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var count = new AtomicInteger();
+            var timer = TimingWheel.timer(pool, count::incrementAndGet, Runnable::run);
+
+            timer.schedule(TimeUnit.MILLISECONDS.toNanos(20));
+            timer.cancel();
+
+            Thread.sleep(100);
+            assertEquals(0, count.get());
+
+            timer.schedule(TimeUnit.MILLISECONDS.toNanos(10));
+            while (count.get() == 0) {
+                Thread.sleep(5);
+            }
+            Thread.sleep(50);
+            assertEquals(1, count.get());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void rescheduleLater() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var latch = new CountDownLatch(1);
+            var timer = TimingWheel.timer(pool, latch::countDown, Runnable::run);
+
+            var start = System.nanoTime();
+            timer.schedule(TimeUnit.MILLISECONDS.toNanos(10));
+            timer.schedule(TimeUnit.MILLISECONDS.toNanos(100));
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void manyTimersReleaseWorker() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var n = 100_000;
+            var latch = new CountDownLatch(n);
+            for (int i = 0; i < n; i++) {
+                TimingWheel.timer(pool, latch::countDown, Runnable::run).schedule(TimeUnit.MILLISECONDS.toNanos(i % 50));
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            while (pool.workers(0) != 0) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void poolNotRetained() throws Exception {
+        var pool = new ParallelExecutorPool(1);
+        var latch = new CountDownLatch(1);
+        TimingWheel.timer(pool, latch::countDown, Runnable::run).schedule(TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        while (pool.workers(0) != 0) {
+            Thread.sleep(10);
+        }
+        pool.close();
+
+        var ref = new WeakReference<>(pool);
+        pool = null;
+        while (ref.get() != null) {
+            System.gc();
+            Thread.sleep(10);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void rejectedActionKeepsWheelRunning() throws Exception {
+        try (var pool = new ParallelExecutorPool(1)) {
+            var rejected = TimingWheel.timer(pool, () -> { }, task -> {
+                throw new RejectedExecutionException();
+            });
+            rejected.schedule(0L);
+
+            while (pool.workers(0) != 0) {
+                Thread.sleep(10);
+            }
+
+            var latch = new CountDownLatch(1);
+            TimingWheel.timer(pool, latch::countDown, Runnable::run).schedule(TimeUnit.MILLISECONDS.toNanos(10));
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
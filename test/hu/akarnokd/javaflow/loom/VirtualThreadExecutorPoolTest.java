@@ -0,0 +1,56 @@
+package hu.akarnokd.javaflow.loom;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class VirtualThreadExecutorPoolTest {
+
+    @Test(timeout = 10_000)
+    public void blockingTasksDontHogCarrier() throws Exception {
+        try (var pool = new VirtualThreadExecutorPool(1)) {
+            try (var worker = pool.worker()) {
+                var n = 100;
+                var cdl = new CountDownLatch(n);
+                for (int i = 0; i < n; i++) {
+                    worker.execute(() -> {
+                        try {
+                            Thread.sleep(100);
+                        } catch (InterruptedException ex) {
+                            // ignored
+                        }
+                        cdl.countDown();
+                    });
+                }
+
+                assertTrue(cdl.await(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void generatorOnWorker() throws Exception {
+        var source = new FiberPublisher<Integer>(emitter -> {
+            for (int i = 0; i < 1000; i++) {
+                emitter.emit(i);
+            }
+        });
+
+        try (var pool = new VirtualThreadExecutorPool(ForkJoinPool.commonPool())) {
+            try (var worker = pool.worker()) {
+                var async = (Flow.Publisher<Integer>)s -> worker.execute(() -> source.subscribe(s));
+
+                var count = new AtomicInteger();
+                try (var iter = new FiberConsumer<>(async).iterator(16)) {
+                    while (iter.hasNext()) {
+                        assertEquals(count.getAndIncrement(), iter.next().intValue());
+                    }
+                }
+                assertEquals(1000, count.get());
+            }
+        }
+    }
+}